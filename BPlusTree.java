@@ -0,0 +1,548 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * BPlusTree.java
+ */
+
+/*
+ * This class is a B+ tree mapping String keys to values. Instead of one key
+ * per node, each node holds up to a fixed number of keys (64 unless another
+ * order is given) in a sorted array, and a search does a binary search within
+ * each node on its way down. The tree is therefore only about log base 32 of
+ * n levels deep: a million keys take four node visits instead of the twenty
+ * or so of a BinarySearchTree, and the keys compared at each level sit next
+ * to each other in one array.
+ *
+ * All of the pairs live in the leaves; the inner nodes hold only separator
+ * keys (separator i is no greater than any key under child i + 1 and greater
+ * than every key under child i). The leaves are linked from left to right,
+ * so iterating over all keys, or over a range, walks along the leaves without
+ * going back up the tree.
+ *
+ * Every node but the root holds at least half as many keys as it can. An
+ * insert that overflows a node splits it in two and passes a separator up to
+ * its parent; a remove that leaves a node too small borrows a key from a
+ * sibling, or merges the two siblings if neither can spare one. Both work
+ * bottom-up along the path recorded on the way down, without recursion.
+ */
+
+public class BPlusTree<E> implements Iterable<String>{
+
+	private static final int DEFAULT_ORDER = 64;
+
+	/*
+	 * A node's keys are in keys[0, count). The arrays have room for one key
+	 * more than the order, so a node can overflow before it is split. The
+	 * fields are not private so they can be reached through Leaf and Inner
+	 */
+
+	private static class Node{
+		String[] keys;
+		int count;
+
+		private Node(int order){
+			keys = new String[order + 1];
+		}
+	}
+
+	private static class Leaf extends Node{
+		private Object[] values;
+		private Leaf next;
+
+		private Leaf(int order){
+			super(order);
+			values = new Object[order + 1];
+		}
+	}
+
+	/*
+	 * An inner node, with children[0, count + 1)
+	 */
+
+	private static class Inner extends Node{
+		private Node[] children;
+
+		private Inner(int order){
+			super(order);
+			children = new Node[order + 2];
+		}
+	}
+
+	/*
+	 * Iterates over the keys from a position in a leaf up to (but not
+	 * including) an upper bound, which may be null for no bound. The tree
+	 * must not be changed while an iterator is in use
+	 */
+
+	private class KeyIterator implements Iterator<String>{
+		private Leaf leaf;
+		private int index;
+		private String to;
+
+		private KeyIterator(Leaf leaf, int index, String to){
+			this.leaf = leaf;
+			this.index = index;
+			this.to = to;
+			skipEmpty();
+		}
+
+		public boolean hasNext(){
+			return leaf != null && (to == null || leaf.keys[index].compareTo(to) < 0);
+		}
+
+		public String next(){
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			String key = leaf.keys[index++];
+			skipEmpty();
+			return key;
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		private void skipEmpty(){
+			while(leaf != null && index >= leaf.count){
+				leaf = leaf.next;
+				index = 0;
+			}
+		}
+	}
+
+	private final int order;
+	private final int min;
+	private Node root;
+	private Leaf first;
+	private int levels;
+	private int size;
+
+	/*
+	 * Constructs an empty tree whose nodes hold up to 64 keys
+	 */
+
+	public BPlusTree(){
+		this(DEFAULT_ORDER);
+	}
+
+	/*
+	 * Constructs an empty tree whose nodes hold up to order keys (at least 4)
+	 */
+
+	public BPlusTree(int order){
+		if(order < 4){
+			throw new IllegalArgumentException();
+		}
+		this.order = order;
+		this.min = order / 2;
+		first = new Leaf(order);
+		root = first;
+		levels = 1;
+	}
+
+	/*
+	 * Returns the value associated with a given key if it is present,
+	 * null otherwise
+	 */
+
+	@SuppressWarnings("unchecked")
+	public E search(String key){
+		Node n = root;
+		while(n instanceof Inner){
+			n = ((Inner) n).children[childIndex(n, key)];
+		}
+		int i = Arrays.binarySearch(n.keys, 0, n.count, key);
+		return i >= 0 ? (E) ((Leaf) n).values[i] : null;
+	}
+
+	public boolean hasKey(String key){
+		return search(key) != null;
+	}
+
+	/*
+	 * Inserts a key-value pair into its leaf, splitting the leaf and then
+	 * any ancestors that overflow in turn
+	 */
+
+	public void insert(String key, E value){
+		Inner[] path = new Inner[levels];
+		int[] slots = new int[levels];
+		int depth = 0;
+		Node n = root;
+		while(n instanceof Inner){
+			int i = childIndex(n, key);
+			path[depth] = (Inner) n;
+			slots[depth] = i;
+			depth++;
+			n = ((Inner) n).children[i];
+		}
+		Leaf leaf = (Leaf) n;
+		int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+		if(i >= 0){
+			System.err.println("Key already exists");
+			return;
+		}
+		i = -i - 1;
+		System.arraycopy(leaf.keys, i, leaf.keys, i + 1, leaf.count - i);
+		System.arraycopy(leaf.values, i, leaf.values, i + 1, leaf.count - i);
+		leaf.keys[i] = key;
+		leaf.values[i] = value;
+		leaf.count++;
+		size++;
+		if(leaf.count <= order){
+			return;
+		}
+		Node left = leaf;
+		Node right = splitLeaf(leaf);
+		String separator = right.keys[0];
+		while(depth > 0){
+			Inner parent = path[--depth];
+			int slot = slots[depth];
+			System.arraycopy(parent.keys, slot, parent.keys, slot + 1, parent.count - slot);
+			System.arraycopy(parent.children, slot + 1, parent.children, slot + 2, parent.count - slot);
+			parent.keys[slot] = separator;
+			parent.children[slot + 1] = right;
+			parent.count++;
+			if(parent.count <= order){
+				return;
+			}
+			left = parent;
+			separator = parent.keys[parent.count / 2];
+			right = splitInner(parent);
+		}
+		Inner top = new Inner(order);
+		top.keys[0] = separator;
+		top.children[0] = left;
+		top.children[1] = right;
+		top.count = 1;
+		root = top;
+		levels++;
+	}
+
+	/*
+	 * Removes a key from its leaf, then fixes any node left with too few
+	 * keys by borrowing from or merging with a sibling, moving up the path
+	 * while the merges leave parents too small
+	 */
+
+	public void remove(String key){
+		Inner[] path = new Inner[levels];
+		int[] slots = new int[levels];
+		int depth = 0;
+		Node n = root;
+		while(n instanceof Inner){
+			int i = childIndex(n, key);
+			path[depth] = (Inner) n;
+			slots[depth] = i;
+			depth++;
+			n = ((Inner) n).children[i];
+		}
+		Leaf leaf = (Leaf) n;
+		int i = Arrays.binarySearch(leaf.keys, 0, leaf.count, key);
+		if(i < 0){
+			System.err.println("Key does not exist");
+			return;
+		}
+		System.arraycopy(leaf.keys, i + 1, leaf.keys, i, leaf.count - i - 1);
+		System.arraycopy(leaf.values, i + 1, leaf.values, i, leaf.count - i - 1);
+		leaf.count--;
+		leaf.keys[leaf.count] = null;
+		leaf.values[leaf.count] = null;
+		size--;
+		n = leaf;
+		while(depth > 0 && n.count < min){
+			Inner parent = path[--depth];
+			int slot = slots[depth];
+			if(slot > 0 && parent.children[slot - 1].count > min){
+				borrowLeft(parent, slot);
+				break;
+			}
+			if(slot < parent.count && parent.children[slot + 1].count > min){
+				borrowRight(parent, slot);
+				break;
+			}
+			merge(parent, slot > 0 ? slot - 1 : slot);
+			n = parent;
+		}
+		if(root instanceof Inner && root.count == 0){
+			root = ((Inner) root).children[0];
+			levels--;
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/*
+	 * Returns the number of levels below the root; an empty tree has
+	 * height -1 and a tree that fits in one leaf has height 0
+	 */
+
+	public int height(){
+		return size == 0 ? -1 : levels - 1;
+	}
+
+	/*
+	 * Returns an array of all of the keys in ascending order, read along
+	 * the leaves
+	 */
+
+	public String[] keys(){
+		String[] keys = new String[size];
+		int i = 0;
+		for(Leaf leaf = first; leaf != null; leaf = leaf.next){
+			System.arraycopy(leaf.keys, 0, keys, i, leaf.count);
+			i += leaf.count;
+		}
+		return keys;
+	}
+
+	/*
+	 * Passes every key and its value to an action, in ascending key order
+	 */
+
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<? super String, ? super E> action){
+		for(Leaf leaf = first; leaf != null; leaf = leaf.next){
+			for(int i = 0; i < leaf.count; i++){
+				action.accept(leaf.keys[i], (E) leaf.values[i]);
+			}
+		}
+	}
+
+	/*
+	 * Returns an iterator over the keys in ascending order
+	 */
+
+	public Iterator<String> iterator(){
+		return new KeyIterator(first, 0, null);
+	}
+
+	/*
+	 * Returns the keys from from (inclusive) to to (exclusive), in ascending
+	 * order, computed lazily as they are iterated; either bound may be null
+	 */
+
+	public Iterable<String> range(final String from, final String to){
+		return new Iterable<String>(){
+			public Iterator<String> iterator(){
+				return keyIterator(from, to);
+			}
+		};
+	}
+
+	/*
+	 * Returns the keys strictly less than to, in ascending order
+	 */
+
+	public Iterable<String> head(String to){
+		return range(null, to);
+	}
+
+	/*
+	 * Returns the keys greater than or equal to from, in ascending order
+	 */
+
+	public Iterable<String> tail(String from){
+		return range(from, null);
+	}
+
+	/*
+	 * Returns an iterator starting at the first key not less than from, found
+	 * by descending to its leaf, and stopping before to
+	 */
+
+	private Iterator<String> keyIterator(String from, String to){
+		if(from == null){
+			return new KeyIterator(first, 0, to);
+		}
+		Node n = root;
+		while(n instanceof Inner){
+			n = ((Inner) n).children[childIndex(n, from)];
+		}
+		int i = Arrays.binarySearch(n.keys, 0, n.count, from);
+		return new KeyIterator((Leaf) n, i >= 0 ? i : -i - 1, to);
+	}
+
+	/*
+	 * Returns the index of the child of an inner node whose subtree would
+	 * hold a key: the number of separators no greater than the key
+	 */
+
+	private static int childIndex(Node n, String key){
+		int lo = 0, hi = n.count;
+		while(lo < hi){
+			int mid = (lo + hi) >>> 1;
+			if(n.keys[mid].compareTo(key) <= 0){
+				lo = mid + 1;
+			}
+			else{
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	/*
+	 * Moves the upper half of an overflowing leaf into a new leaf linked in
+	 * after it, and returns the new leaf
+	 */
+
+	private Leaf splitLeaf(Leaf leaf){
+		Leaf right = new Leaf(order);
+		int keep = leaf.count / 2;
+		right.count = leaf.count - keep;
+		System.arraycopy(leaf.keys, keep, right.keys, 0, right.count);
+		System.arraycopy(leaf.values, keep, right.values, 0, right.count);
+		Arrays.fill(leaf.keys, keep, leaf.count, null);
+		Arrays.fill(leaf.values, keep, leaf.count, null);
+		leaf.count = keep;
+		right.next = leaf.next;
+		leaf.next = right;
+		return right;
+	}
+
+	/*
+	 * Moves the keys and children above the middle key of an overflowing
+	 * inner node into a new node, and returns the new node; the middle key
+	 * is left for the caller to pass up to the parent
+	 */
+
+	private Inner splitInner(Inner n){
+		Inner right = new Inner(order);
+		int mid = n.count / 2;
+		right.count = n.count - mid - 1;
+		System.arraycopy(n.keys, mid + 1, right.keys, 0, right.count);
+		System.arraycopy(n.children, mid + 1, right.children, 0, right.count + 1);
+		Arrays.fill(n.keys, mid, n.count, null);
+		Arrays.fill(n.children, mid + 1, n.count + 1, null);
+		n.count = mid;
+		return right;
+	}
+
+	/*
+	 * Moves the last key of child slot - 1 into child slot, through the
+	 * separator between them
+	 */
+
+	private void borrowLeft(Inner parent, int slot){
+		Node n = parent.children[slot];
+		Node left = parent.children[slot - 1];
+		System.arraycopy(n.keys, 0, n.keys, 1, n.count);
+		if(n instanceof Leaf){
+			Leaf leaf = (Leaf) n;
+			System.arraycopy(leaf.values, 0, leaf.values, 1, leaf.count);
+			leaf.keys[0] = left.keys[left.count - 1];
+			leaf.values[0] = ((Leaf) left).values[left.count - 1];
+			((Leaf) left).values[left.count - 1] = null;
+			parent.keys[slot - 1] = leaf.keys[0];
+		}
+		else{
+			Inner inner = (Inner) n;
+			System.arraycopy(inner.children, 0, inner.children, 1, inner.count + 1);
+			inner.keys[0] = parent.keys[slot - 1];
+			inner.children[0] = ((Inner) left).children[left.count];
+			((Inner) left).children[left.count] = null;
+			parent.keys[slot - 1] = left.keys[left.count - 1];
+		}
+		left.keys[left.count - 1] = null;
+		left.count--;
+		n.count++;
+	}
+
+	/*
+	 * Moves the first key of child slot + 1 into child slot, through the
+	 * separator between them
+	 */
+
+	private void borrowRight(Inner parent, int slot){
+		Node n = parent.children[slot];
+		Node right = parent.children[slot + 1];
+		if(n instanceof Leaf){
+			Leaf leaf = (Leaf) n;
+			Leaf r = (Leaf) right;
+			leaf.keys[leaf.count] = r.keys[0];
+			leaf.values[leaf.count] = r.values[0];
+			System.arraycopy(r.values, 1, r.values, 0, r.count - 1);
+			r.values[r.count - 1] = null;
+			System.arraycopy(r.keys, 1, r.keys, 0, r.count - 1);
+			parent.keys[slot] = r.keys[0];
+		}
+		else{
+			Inner inner = (Inner) n;
+			Inner r = (Inner) right;
+			inner.keys[inner.count] = parent.keys[slot];
+			inner.children[inner.count + 1] = r.children[0];
+			parent.keys[slot] = r.keys[0];
+			System.arraycopy(r.keys, 1, r.keys, 0, r.count - 1);
+			System.arraycopy(r.children, 1, r.children, 0, r.count);
+			r.children[r.count] = null;
+		}
+		right.keys[right.count - 1] = null;
+		right.count--;
+		n.count++;
+	}
+
+	/*
+	 * Merges child i + 1 into child i and removes the separator between them
+	 * (and the emptied child) from the parent
+	 */
+
+	private void merge(Inner parent, int i){
+		Node left = parent.children[i];
+		Node right = parent.children[i + 1];
+		if(left instanceof Leaf){
+			Leaf l = (Leaf) left;
+			Leaf r = (Leaf) right;
+			System.arraycopy(r.keys, 0, l.keys, l.count, r.count);
+			System.arraycopy(r.values, 0, l.values, l.count, r.count);
+			l.count += r.count;
+			l.next = r.next;
+		}
+		else{
+			Inner l = (Inner) left;
+			Inner r = (Inner) right;
+			l.keys[l.count] = parent.keys[i];
+			System.arraycopy(r.keys, 0, l.keys, l.count + 1, r.count);
+			System.arraycopy(r.children, 0, l.children, l.count + 1, r.count + 1);
+			l.count += r.count + 1;
+		}
+		System.arraycopy(parent.keys, i + 1, parent.keys, i, parent.count - i - 1);
+		System.arraycopy(parent.children, i + 2, parent.children, i + 1, parent.count - i - 1);
+		parent.count--;
+		parent.keys[parent.count] = null;
+		parent.children[parent.count + 1] = null;
+	}
+
+	/*
+	 * Testing main
+	 */
+
+	public static void main(String[] args){
+		BPlusTree<Integer> t = new BPlusTree<Integer>(4);
+		String[] strings = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
+		for(int i = 0; i < strings.length; i++){
+			t.insert(strings[i], i);
+		}
+		for(String s: t){
+			System.out.println(s + " " + t.search(s));
+		}
+		System.out.println("height " + t.height());
+		t.remove("team");
+		t.remove("tram");
+		for(String s: t.range("te", "tr")){
+			System.out.println(s);
+		}
+		System.out.println(t.size());
+	}
+
+}
@@ -0,0 +1,22 @@
+/**
+ * Base59Hash.java
+ */
+
+/*
+ * Reads a String as a number in base 59 whose digits are the characters minus
+ * 64, evaluated with Horner's rule from the last character and allowed to
+ * overflow. This is the arithmetic of HashTable.hash2, which reduces the
+ * number to an index.
+ */
+
+public class Base59Hash implements HashFunction{
+	
+	public int hash(String s){
+		int x = 0;
+		for(int i = s.length() - 1; i >= 0; i--){
+			x = x * 59 + (s.charAt(i) - 64);
+		}
+		return x;
+	}
+	
+}
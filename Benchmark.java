@@ -0,0 +1,340 @@
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Random;
+
+/**
+ * Benchmark.java
+ */
+
+/*
+ * A self-contained benchmark harness for HashTable and BinarySearchTree. For
+ * every combination of table size, key count, key distribution and hash
+ * function it measures put, get, hasKey, remove, keys and size on a HashTable,
+ * plus balance on a single BinarySearchTree holding all of the keys, which is
+ * skewed through its public rotations before every call.
+ * 
+ * Each case is run for a number of untimed warmup iterations and then for a
+ * number of measured ones; it reports throughput (operations per second),
+ * per-operation latency percentiles from separate passes in which every
+ * operation is timed on its own, and bytes allocated per operation as counted
+ * by the JVM for the benchmark thread. Latency passes are repeated until
+ * there are at least SAMPLES latencies, and a percentile is only printed
+ * when at least ten of them lie above it, so a case with few operations
+ * shows "-" for its tail instead of a number that is really its maximum.
+ * Allocation shows "n/a" when the JVM cannot count it.
+ * 
+ * Usage: java Benchmark [filter]
+ * Only cases whose name contains the filter are run. The parameters can be
+ * changed with system properties, e.g.
+ *   java -Dsizes=19,1024 -Dkeys=1000,100000 -Ddists=random,prefix,sequential
+ *        -Dhashes=murmur,polynomial,string,hash,hash2 -Dwarmup=5 -Diterations=10 Benchmark get
+ * The hash and hash2 cases use PowerHash and Base59Hash, the functions behind
+ * HashTable.hash and HashTable.hash2.
+ */
+
+public class Benchmark{
+	
+	private static final String[] WORDS = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
+	private static final int SAMPLES = 200;
+	private static final com.sun.management.ThreadMXBean ALLOCATION = allocationCounter();
+	
+	/*
+	 * A benchmarked operation: setup is run before every iteration and is
+	 * not timed, then run is called with i = 0 .. ops - 1
+	 */
+	
+	private static abstract class Case{
+		String name;
+		int ops;
+		
+		Case(String name, int ops){
+			this.name = name;
+			this.ops = ops;
+		}
+		
+		void setup(){
+		}
+		
+		abstract void run(int i);
+	}
+	
+	private static int warmup = Integer.getInteger("warmup", 3);
+	private static int iterations = Integer.getInteger("iterations", 5);
+	private static int sink;
+	
+	public static void main(String[] args){
+		String filter = args.length > 0 ? args[0] : "";
+		int[] sizes = ints(System.getProperty("sizes", "19,1024"));
+		int[] counts = ints(System.getProperty("keys", "1000,100000"));
+		String[] dists = System.getProperty("dists", "random,prefix,sequential").split(",");
+		String[] hashes = System.getProperty("hashes", "murmur,polynomial,string,hash,hash2").split(",");
+		System.out.printf("%-52s %14s %10s %10s %10s %10s %12s%n", "case", "ops/s", "p50 ns", "p90 ns", "p99 ns", "p99.9 ns", "bytes/op");
+		for(int count: counts){
+			for(String dist: dists){
+				String[] keys = keys(dist, count);
+				String prefix = "keys=" + count + " " + dist;
+				run(filter, balance(prefix + " bst.balance", keys));
+				for(int size: sizes){
+					for(String hash: hashes){
+						String name = prefix + " size=" + size + " " + hash;
+						for(Case c: tableCases(name, size, function(hash), keys)){
+							run(filter, c);
+						}
+					}
+				}
+			}
+		}
+		if(sink == 42){
+			System.out.println();
+		}
+	}
+	
+	/*
+	 * Builds the HashTable cases for one combination of parameters
+	 */
+	
+	private static Case[] tableCases(String name, final int size, final HashFunction f, final String[] keys){
+		@SuppressWarnings("unchecked")
+		final HashTable<Integer>[] table = (HashTable<Integer>[]) new HashTable<?>[1];
+		final String[] missing = new String[keys.length];
+		for(int i = 0; i < keys.length; i++){
+			missing[i] = keys[i] + "#";
+		}
+		return new Case[]{
+			new Case(name + " put", keys.length){
+				void setup(){
+					table[0] = new HashTable<Integer>(size, f);
+				}
+				void run(int i){
+					table[0].put(keys[i], i);
+				}
+			},
+			new Case(name + " get", keys.length){
+				void setup(){
+					table[0] = filled(size, f, keys);
+				}
+				void run(int i){
+					sink += table[0].get(keys[i]);
+				}
+			},
+			new Case(name + " hasKey", keys.length){
+				void setup(){
+					table[0] = filled(size, f, keys);
+				}
+				void run(int i){
+					if(table[0].hasKey((i & 1) == 0 ? keys[i] : missing[i])){
+						sink++;
+					}
+				}
+			},
+			new Case(name + " remove", keys.length){
+				void setup(){
+					table[0] = filled(size, f, keys);
+				}
+				void run(int i){
+					table[0].remove(keys[i]);
+				}
+			},
+			new Case(name + " keys", 10){
+				void setup(){
+					table[0] = filled(size, f, keys);
+				}
+				void run(int i){
+					sink += table[0].keys().length;
+				}
+			},
+			new Case(name + " size", keys.length){
+				void setup(){
+					table[0] = filled(size, f, keys);
+				}
+				void run(int i){
+					sink += table[0].size();
+				}
+			}
+		};
+	}
+	
+	/*
+	 * Balances the tree once per iteration, after skewing it again (untimed)
+	 * by rotating its root right until the smallest key is at the root and
+	 * the root has no left subtree. balance collects and relinks every node
+	 * whatever the shape, so this costs it as much as a vine would, and the
+	 * skew is built with public rotations at the root, which are cheap
+	 */
+	
+	private static Case balance(String name, final String[] keys){
+		final BinarySearchTree<Integer> tree = new BinarySearchTree<Integer>();
+		for(int i = 0; i < keys.length; i++){
+			tree.insert(keys[i], i);
+		}
+		return new Case(name, 1){
+			void setup(){
+				while(tree.hasLeft()){
+					tree.rotateRight();
+				}
+			}
+			void run(int i){
+				tree.balance();
+			}
+		};
+	}
+	
+	private static HashTable<Integer> filled(int size, HashFunction f, String[] keys){
+		HashTable<Integer> table = new HashTable<Integer>(size, f);
+		for(int i = 0; i < keys.length; i++){
+			table.put(keys[i], i);
+		}
+		return table;
+	}
+	
+	/*
+	 * Runs the warmup and measured iterations of a case and prints one line
+	 */
+	
+	private static void run(String filter, Case c){
+		if(!c.name.contains(filter)){
+			return;
+		}
+		for(int w = 0; w < warmup; w++){
+			c.setup();
+			for(int i = 0; i < c.ops; i++){
+				c.run(i);
+			}
+		}
+		long time = 0;
+		long bytes = 0;
+		boolean counted = ALLOCATION != null;
+		for(int n = 0; n < iterations; n++){
+			c.setup();
+			long before = allocated();
+			long start = System.nanoTime();
+			for(int i = 0; i < c.ops; i++){
+				c.run(i);
+			}
+			time += System.nanoTime() - start;
+			long after = allocated();
+			counted = counted && before >= 0 && after >= 0;
+			bytes += after - before;
+		}
+		int passes = (SAMPLES + c.ops - 1) / c.ops;
+		long[] latencies = new long[c.ops * passes];
+		for(int n = 0; n < passes; n++){
+			c.setup();
+			for(int i = 0; i < c.ops; i++){
+				long start = System.nanoTime();
+				c.run(i);
+				latencies[n * c.ops + i] = System.nanoTime() - start;
+			}
+		}
+		Arrays.sort(latencies);
+		long ops = (long) c.ops * iterations;
+		System.out.printf("%-52s %14.0f %10s %10s %10s %10s %12s%n", c.name, ops * 1e9 / time,
+				percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+				percentile(latencies, 0.999), counted ? String.format("%.1f", (double) bytes / ops) : "n/a");
+	}
+	
+	/*
+	 * Returns a percentile of the sorted latencies, or "-" if fewer than ten
+	 * of them lie above it
+	 */
+	
+	private static String percentile(long[] sorted, double p){
+		if(sorted.length * (1 - p) < 10){
+			return "-";
+		}
+		return Long.toString(sorted[(int) (sorted.length * p)]);
+	}
+	
+	/*
+	 * Returns the bytes allocated so far by this thread, or a negative number
+	 * if the JVM has stopped counting them
+	 */
+	
+	private static long allocated(){
+		return ALLOCATION == null ? -1 : ALLOCATION.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+	
+	/*
+	 * Returns the JVM's per-thread allocation counter, switched on, or null
+	 * if the JVM cannot count allocations; checked once, at startup
+	 */
+	
+	private static com.sun.management.ThreadMXBean allocationCounter(){
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if(!(bean instanceof com.sun.management.ThreadMXBean)){
+			return null;
+		}
+		com.sun.management.ThreadMXBean counter = (com.sun.management.ThreadMXBean) bean;
+		try{
+			if(!counter.isThreadAllocatedMemorySupported()){
+				return null;
+			}
+			if(!counter.isThreadAllocatedMemoryEnabled()){
+				counter.setThreadAllocatedMemoryEnabled(true);
+			}
+		}
+		catch(UnsupportedOperationException | SecurityException e){
+			return null;
+		}
+		return counter;
+	}
+	
+	/*
+	 * Generates count distinct keys: random lowercase strings, words from
+	 * HashTable's word list followed by a suffix, or sequential numbers
+	 */
+	
+	private static String[] keys(String dist, int count){
+		Random random = new Random(count);
+		LinkedHashSet<String> keys = new LinkedHashSet<String>();
+		for(int i = 0; keys.size() < count; i++){
+			if(dist.equals("random")){
+				char[] c = new char[8];
+				for(int j = 0; j < c.length; j++){
+					c[j] = (char) ('a' + random.nextInt(26));
+				}
+				keys.add(new String(c));
+			}
+			else if(dist.equals("prefix")){
+				keys.add(WORDS[i % WORDS.length] + Integer.toString(i / WORDS.length, 26));
+			}
+			else if(dist.equals("sequential")){
+				keys.add(String.format("%09d", i));
+			}
+			else{
+				throw new IllegalArgumentException(dist);
+			}
+		}
+		return keys.toArray(new String[count]);
+	}
+	
+	private static HashFunction function(String name){
+		if(name.equals("murmur")){
+			return new MurmurHash();
+		}
+		if(name.equals("polynomial")){
+			return new PolynomialHash();
+		}
+		if(name.equals("string")){
+			return new StringHash();
+		}
+		if(name.equals("hash")){
+			return new PowerHash();
+		}
+		if(name.equals("hash2")){
+			return new Base59Hash();
+		}
+		throw new IllegalArgumentException(name);
+	}
+	
+	private static int[] ints(String s){
+		String[] parts = s.split(",");
+		int[] result = new int[parts.length];
+		for(int i = 0; i < parts.length; i++){
+			result[i] = Integer.parseInt(parts[i].trim());
+		}
+		return result;
+	}
+	
+}
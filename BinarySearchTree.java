@@ -1,8 +1,13 @@
-import java.util.ArrayList;
-
-//Note: ArrayList only utilised in the printLevelOrder method
-
-//Note: remove does not work when node has two children, balance must be fixed
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
 
 /**
  * BinarySearchTree.java
@@ -15,9 +20,14 @@ import java.util.ArrayList;
  * right contain a greater one. This guarantees log(n) time searching for a balanced
  * tree.
  *
+ * Besides lookups by key, the tree answers ordered queries: first, last, floor
+ * and ceiling, and lazy in-order iteration over all keys or over a range of
+ * them. Iteration follows parent pointers from node to node, so it never
+ * builds an array and never visits a subtree lying wholly outside the range.
+ *
  */
 
-public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<E>{
+public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<E>, Bucket<E>, Iterable<String>{
 	
 	/*
 	 * A node representing a value in a binary tree, with pointers to the parent,
@@ -30,6 +40,8 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 		private Node parent;
 		private Node left;
 		private Node right;
+		private int height;
+		private int size;
 		
 		public Node(String s, E data, Node p, Node l, Node r){
 			key = s;
@@ -37,6 +49,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 			parent = p;
 			left = l;
 			right = r;
+			size = 1;
 		}
 		
 		public Node(String s, E data, Node p){
@@ -45,6 +58,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 			parent = p;
 			left = null;
 			right = null;
+			size = 1;
 		}
 		
 		public Node(String s, E data){
@@ -53,11 +67,181 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 			parent = null;
 			left= null;
 			right = null;
+			size = 1;
 		}
 		
     }
+    
+    /*
+     * Iterates in order over the keys from a starting node up to (but not
+     * including) an upper bound, which may be null for no bound. The tree
+     * must not be changed while an iterator is in use
+     */
+    
+    private class KeyIterator implements Iterator<String>{
+    	private Node next;
+    	private String to;
+    	
+    	private KeyIterator(Node start, String to){
+    		next = start;
+    		this.to = to;
+    	}
+    	
+    	public boolean hasNext(){
+    		return next != null && (to == null || next.key.compareTo(to) < 0);
+    	}
+    	
+    	public String next(){
+    		if(!hasNext()){
+    			throw new NoSuchElementException();
+    		}
+    		String key = next.key;
+    		next = BinarySearchTree.this.next(next);
+    		return key;
+    	}
+    	
+    	public void remove(){
+    		throw new UnsupportedOperationException();
+    	}
+    }
+
+    /*
+     * A first-in first-out queue of nodes in a circular array whose length
+     * is a power of two, doubled when it fills up, so adding and removing
+     * are both O(1)
+     */
+    
+    private class NodeQueue{
+    	private Object[] nodes = new Object[16];
+    	private int head;
+    	private int size;
+    	
+    	private void add(Node n){
+    		if(size == nodes.length){
+    			Object[] larger = new Object[nodes.length * 2];
+    			for(int i = 0; i < size; i++){
+    				larger[i] = nodes[(head + i) & (nodes.length - 1)];
+    			}
+    			nodes = larger;
+    			head = 0;
+    		}
+    		nodes[(head + size) & (nodes.length - 1)] = n;
+    		size++;
+    	}
+    	
+    	private Node poll(){
+    		@SuppressWarnings("unchecked")
+    		Node n = (Node) nodes[head];
+    		nodes[head] = null;
+    		head = (head + 1) & (nodes.length - 1);
+    		size--;
+    		return n;
+    	}
+    	
+    	/*
+    	 * Adds a node's children, left then right
+    	 */
+    	
+    	private void addChildren(Node n){
+    		if(n.left != null){
+    			add(n.left);
+    		}
+    		if(n.right != null){
+    			add(n.right);
+    		}
+    	}
+    }
+    
+    /*
+     * Iterates over the keys in level order. The tree must not be changed
+     * while an iterator is in use
+     */
+    
+    private class LevelIterator implements Iterator<String>{
+    	private NodeQueue queue = new NodeQueue();
+    	
+    	private LevelIterator(){
+    		if(node != null){
+    			queue.add(node);
+    		}
+    	}
+    	
+    	public boolean hasNext(){
+    		return queue.size > 0;
+    	}
+    	
+    	public String next(){
+    		if(queue.size == 0){
+    			throw new NoSuchElementException();
+    		}
+    		Node n = queue.poll();
+    		queue.addChildren(n);
+    		return n.key;
+    	}
+    	
+    	public void remove(){
+    		throw new UnsupportedOperationException();
+    	}
+    }
+    
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int SUM = 0, MAX_PATH_SUM = 1, LEAF_COUNT = 2, DOUBLES = 3;
+    
+    /*
+     * Computes one of the integer aggregates over the subtree rooted at a
+     * node: subtrees above PARALLEL_THRESHOLD nodes fork a task for their
+     * left child and combine its result with their own and their right
+     * child's; smaller ones run the sequential method on a wrapper tree
+     */
+    
+    @SuppressWarnings("serial")
+    private class AggregateTask extends RecursiveTask<Integer>{
+    	private Node n;
+    	private int op;
+    	
+    	private AggregateTask(Node n, int op){
+    		this.n = n;
+    		this.op = op;
+    	}
+    	
+    	protected Integer compute(){
+    		if(n.size <= PARALLEL_THRESHOLD){
+    			BinarySearchTree<E> t = new BinarySearchTree<E>(n);
+    			if(op == SUM){
+    				return t.treeSum();
+    			}
+    			if(op == MAX_PATH_SUM){
+    				return t.maxPathSum();
+    			}
+    			if(op == LEAF_COUNT){
+    				return t.leafCount();
+    			}
+    			t.doubles();
+    			return 0;
+    		}
+    		AggregateTask left = null;
+    		if(n.left != null){
+    			left = new AggregateTask(n.left, op);
+    			left.fork();
+    		}
+    		int r = n.right == null ? 0 : new AggregateTask(n.right, op).compute();
+    		int l = left == null ? 0 : left.join();
+    		if(op == SUM){
+    			return l + r + intValue(n.value);
+    		}
+    		if(op == MAX_PATH_SUM){
+    			return Math.max(l, r) + intValue(n.value);
+    		}
+    		if(op == LEAF_COUNT){
+    			return l + r;
+    		}
+    		n.value = doubled(n.value);
+    		return 0;
+    	}
+    }
 
     private Node node;
+    private long rotations;
 
 	//These are the only two constructors you should have for BinarySearchTree
     public BinarySearchTree(){
@@ -186,7 +370,8 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 		if(hasLeft()){
 			throw new Exception();
 		}
-		node.left = new Node(key, e);
+		node.left = new Node(key, e, node);
+		refresh(node);
 		return this;
     }
 
@@ -201,50 +386,131 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
 		if(hasRight()){
 			throw new Exception();
 		}
-		node.right = new Node(key, e);
+		node.right = new Node(key, e, node);
+		refresh(node);
 		return this;
     }
     
     /*
-     * Inserts a given key-value pair into the tree in the correct position
+     * Inserts a given key-value pair into the tree in the correct position,
+     * then rebalances the nodes on the path back up to the root
      */
     
     public void insert(String key, E value){
+    	if(!insertIfAbsent(key, value)){
+    		System.err.println("Key already exists");
+    	}
+    }
+    
+    /*
+     * Inserts a key-value pair like insert, but returns false instead of
+     * printing an error if the key already exists
+     */
+    
+    private boolean insertIfAbsent(String key, E value){
     	if(node == null){
     		addRoot(key, value);
-    		return;
+    		return true;
     	}
-    	if(key.compareTo(node.key) > 0){
-    		try{
-    			if(hasRight()){
-    				right().insert(key, value);
+    	Node n = node;
+    	while(true){
+    		int c = key.compareTo(n.key);
+    		if(c > 0){
+    			if(n.right == null){
+    				n.right = new Node(key, value, n);
+    				retrace(n);
+    				return true;
     			}
-    			else{
-    				insertRight(key, value);
+    			n = n.right;
+    		}
+    		else if(c < 0){
+    			if(n.left == null){
+    				n.left = new Node(key, value, n);
+    				retrace(n);
+    				return true;
     			}
+    			n = n.left;
     		}
-    		catch(Exception e){
-    			System.err.println("Has right child");
+    		else{
+    			return false;
     		}
     	}
-    	else{
-    		if(key.compareTo(node.key) < 0){
-    			try{
-    				if(hasLeft()){
-    					left().insert(key, value);
-    				}
-    				else{
-    					insertLeft(key, value);
-    				}
-    			}
-    			catch(Exception e){
-    				System.err.println("Has left child");
-    			}
+    }
+    
+    /*
+     * Builds a balanced tree from a batch of key-value pairs, in O(n) time if
+     * the keys are already in ascending order and O(n log n) otherwise; if a
+     * key appears more than once its first value is kept
+     */
+    
+    public static <E extends Comparable<E>> BinarySearchTree<E> build(String[] keys, E[] values){
+    	BinarySearchTree<E> tree = new BinarySearchTree<E>();
+    	tree.insertAll(keys, values, 0, keys.length);
+    	return tree;
+    }
+    
+    /*
+     * Inserts a batch of key-value pairs; keys already in the tree, or
+     * repeated in the batch, keep their first value, without an error being
+     * printed for them. A batch that is small next to the tree is inserted
+     * one pair at a time, otherwise it is merged with the tree's contents in
+     * order and the whole tree is rebuilt, perfectly balanced, in linear time
+     */
+    
+    public void insertAll(String[] keys, E[] values){
+    	insertAll(keys, values, 0, keys.length);
+    }
+    
+    public void insertAll(String[] keys, E[] values, int from, int to){
+    	int m = to - from;
+    	int n = size();
+    	if(m == 0){
+    		return;
+    	}
+    	if((long) m * (32 - Integer.numberOfLeadingZeros(n)) < n){
+    		for(int i = from; i < to; i++){
+    			insertIfAbsent(keys[i], values[i]);
+    		}
+    		return;
+    	}
+    	String[] k = Arrays.copyOfRange(keys, from, to);
+    	Object[] v = Arrays.copyOfRange(values, from, to);
+    	for(int i = 1; i < m; i++){
+    		if(k[i - 1].compareTo(k[i]) > 0){
+    			sort(k, v, k.clone(), v.clone(), 0, m);
+    			break;
+    		}
+    	}
+    	String[] mergedKeys = new String[n + m];
+    	Object[] mergedValues = new Object[n + m];
+    	int c = 0, i = 0;
+    	Node e = first(node);
+    	while(e != null || i < m){
+    		String key;
+    		Object value;
+    		if(i == m || (e != null && e.key.compareTo(k[i]) <= 0)){
+    			key = e.key;
+    			value = e.value;
+    			e = next(e);
     		}
     		else{
-    			System.err.println("Key already exists");
+    			key = k[i];
+    			value = v[i];
+    			i++;
+    		}
+    		if(c == 0 || !mergedKeys[c - 1].equals(key)){
+    			mergedKeys[c] = key;
+    			mergedValues[c] = value;
+    			c++;
     		}
-    	}	
+    	}
+    	if(node == null){
+    		node = build(mergedKeys, mergedValues, 0, c, null);
+    		return;
+    	}
+    	Node root = build(mergedKeys, mergedValues, 0, c, node.parent);
+    	replace(node, root);
+    	refresh(root.parent);
     }
     
     /*
@@ -253,42 +519,91 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
      */
     
     public E search(String key){
-    	if(node == null){
-    		return null;
+    	Node n = node;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		if(c > 0){
+    			n = n.right;
+    		}
+    		else if(c < 0){
+    			n = n.left;
+    		}
+    		else{
+    			return n.value;
+    		}
     	}
-    	if(key.compareTo(node.key) > 0){
-    		try{
-    			if(hasRight()){
-    				return right().search(key);
-    			}
-    			else{
-    				return null;
+    	return null;
+    }
+    
+    /*
+     * Looks up a sorted batch of keys by finger search: each search starts
+     * from where the last one ended, climbing only until it reaches a node
+     * whose key is not less than the next key (whose subtree must then hold
+     * it) before descending again. Nearby keys share most of their paths, so
+     * a batch costs far fewer comparisons than a descent from the root each
+     */
+    
+    public void searchAll(String[] keys, int from, int to, Object[] results){
+    	Node n = node;
+    	for(int i = from; i < to; i++){
+    		if(n == null){
+    			results[i] = null;
+    			continue;
+    		}
+    		String key = keys[i];
+    		while(n != node && n.key.compareTo(key) < 0){
+    			n = n.parent;
+    		}
+    		Node last = n;
+    		while(n != null){
+    			int c = key.compareTo(n.key);
+    			if(c == 0){
+    				break;
     			}
+    			last = n;
+    			n = c > 0 ? n.right : n.left;
     		}
-    		catch(Exception e){
-    			System.err.println("No right child");
+    		results[i] = n == null ? null : n.value;
+    		if(n == null){
+    			n = last;
     		}
     	}
-    	else{
-    		if(key.compareTo(node.key) < 0){
-    			try{
-    				if(hasLeft()){
-    					return left().search(key);
-    				}
-    				else{
-    					return null;
-    				}
-    			}
-    			catch(Exception e){
-    				System.err.println("No left child");
-    			}
+    }
+    
+    /*
+     * Searches like search, and records the number of key comparisons it
+     * took in the given metrics
+     */
+    
+    E search(String key, TableMetrics metrics){
+    	Node n = node;
+    	int comparisons = 0;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		comparisons++;
+    		if(c > 0){
+    			n = n.right;
+    		}
+    		else if(c < 0){
+    			n = n.left;
     		}
     		else{
-    			return node.value;
+    			metrics.recordComparisons(comparisons);
+    			return n.value;
     		}
     	}
+    	metrics.recordComparisons(comparisons);
     	return null;
     }
+    
+    /*
+     * Returns the number of rotations this tree has performed while
+     * rebalancing
+     */
+    
+    public long rotations(){
+    	return rotations;
+    }
 
     /**
      * Remove the root node, replace it with its child, if any,
@@ -297,241 +612,220 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
      *@return E   Element at the top of tree
      */
     public E remove() throws Exception{
-		if(hasLeft()){
-			if(hasRight()){
-				throw new Exception();
-			}
-			else{
-				Node temp = node;
-				node = node.left;
-				return temp.value;
-			}
-		}
-		else{
-			if(hasRight()){
-				Node temp = node;
-				node = node.right;
-				return temp.value;
-			}
-			else{
-				Node temp = node;
-				node = null;
-				return temp.value;
-			}
+		if(hasLeft() && hasRight()){
+			throw new Exception();
 		}
+		Node temp = node;
+		unlink(temp);
+		return temp.value;
     }
     
     /*
-     * Removes the key-value pair associated with a given key
+     * Removes the key-value pair associated with a given key. A node with two
+     * children takes the key and value of its in-order successor, which is
+     * then unlinked instead; the tree is rebalanced from the unlinked node's
+     * parent back up to the root
      */
     
     public void remove(String key){
-    	if(node == null){
+    	if(!delete(key)){
     		System.err.println("Key does not exist");
-    		return;
     	}
-    	if(key.compareTo(node.key) > 0){
-    		try{
-    			if(hasRight()){
-    				right().remove(key);
-    			}
-    			else{
-    				System.err.println("Key does not exist");
-    	    		return;
-    			}
+    }
+    
+    /*
+     * Removes a key's node and returns true, or returns false if the key is
+     * not in the tree
+     */
+    
+    private boolean delete(String key){
+    	Node n = node;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		if(c > 0){
+    			n = n.right;
     		}
-    		catch(Exception e){
-    			System.err.println("No right child");
+    		else if(c < 0){
+    			n = n.left;
     		}
-    	}
-    	else{
-    		if(key.compareTo(node.key) < 0){
-    			try{
-    				if(hasLeft()){
-    					left().remove(key);
-    				}
-    				else{
-    					System.err.println("Key does not exist");
-    		    		return;
+    		else{
+    			if(n.left != null && n.right != null){
+    				Node s = n.right;
+    				while(s.left != null){
+    					s = s.left;
     				}
+    				n.key = s.key;
+    				n.value = s.value;
+    				n = s;
     			}
-    			catch(Exception e){
-    				System.err.println("No left child");
-    			}
+    			unlink(n);
+    			return true;
     		}
-    		else{
-    			try{
-    				remove();
-    			}
-    			catch(Exception e){
-    				System.err.println("Could not remove");
+    	}
+    	return false;
+    }
+    
+    /*
+     * Removes a sorted batch of keys, ignoring those not in the tree. A batch
+     * that is small next to the tree is removed one key at a time, otherwise
+     * the remaining pairs are collected in order and the tree is rebuilt,
+     * perfectly balanced, in linear time
+     */
+    
+    public int removeAll(String[] keys, int from, int to){
+    	int m = to - from;
+    	int n = size();
+    	if(m == 0 || n == 0){
+    		return 0;
+    	}
+    	if((long) m * (32 - Integer.numberOfLeadingZeros(n)) < n){
+    		int removed = 0;
+    		for(int i = from; i < to; i++){
+    			if(delete(keys[i])){
+    				removed++;
     			}
     		}
+    		return removed;
+    	}
+    	String[] keptKeys = new String[n];
+    	Object[] keptValues = new Object[n];
+    	int c = 0, i = from;
+    	for(Node e = first(node); e != null; e = next(e)){
+    		while(i < to && keys[i].compareTo(e.key) < 0){
+    			i++;
+    		}
+    		if(i < to && keys[i].equals(e.key)){
+    			continue;
+    		}
+    		keptKeys[c] = e.key;
+    		keptValues[c] = e.value;
+    		c++;
     	}
+    	Node parent = node.parent;
+    	replace(node, build(keptKeys, keptValues, 0, c, parent));
+    	refresh(parent);
+    	return n - c;
     }
 
     /**
-     * Return the height of the tree. Your method should be recursive.
+     * Return the height of the tree, read from the height cached in the
+     * root node; an empty tree has height -1
      * @return int   height of the tree
      */
     public int height(){
-		if(isLeaf()){
-			return 0;
-		}
-		int l = 0, r = 0;
-		if(hasLeft()){
-			try{
-				l = left().height();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}	
-		}
-		if(hasRight()){
-			try{
-				r = right().height();
-			}
-			catch(Exception e){
-				System.err.println("Error: no right node");
-			}
-		}
-		return Math.max(l, r) + 1;
+		return height(node);
     }
     
     /*
-     * Returns the number of key-value pairs stored in the tree
+     * Returns the number of key-value pairs stored in the tree, read from
+     * the subtree count cached in the root node
      */
     
     public int size(){
     	if(node == null){
     		return 0;
     	}
-    	int l = 0, r = 0;
-    	if(hasLeft()){
-			try{
-				l = left().size();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}	
-		}
-		if(hasRight()){
-			try{
-				r = right().size();
-			}
-			catch(Exception e){
-				System.err.println("Error: no right node");
-			}
-		}
-		return l + r + 1;
+    	return node.size;
     }
 
     /**
      * return a new tree which looks like the mirror image of the
-     * given tree (your method should be recursive) for example: 
+     * given tree, for example: 
      *    A                          A
      *   / \                        / \
      *  B   C   you should return  C   B
      * / \                            / \
      *D   E                          E   D
      *
+     * The children of each node are swapped in post-order by a loop that
+     * follows parent pointers, so arbitrarily deep trees need no stack
      *@return BinarySearchTree   mirrored tree
      */
     public BinarySearchTree mirrorTree(){
-		if(hasLeft()){
-			if(hasRight()){
-				Node temp = node.left;
-				node.left = node.right;
-				node.right = temp;
-				try{
-					left().mirrorTree();
-					right().mirrorTree();
-				}
-				catch(Exception e){
-					
-				}
-			}
-			else{
-				node.right = node.left;
-				node.left = null;
-				try{
-					right().mirrorTree();
-				}
-				catch(Exception e){
-					System.err.println("Error: no right node");
-				}
-			}
-		}
-		else{
-			if(hasRight()){
-				node.left = node.right;
-				node.right = null;
-				try{
-					left().mirrorTree();
-				}
-				catch(Exception e){
-					System.err.println("Error: no left node");
-				}
-			}
-		}
+    	Node top = node, prev = null, cur = top;
+    	if(top != null){
+    		prev = top.parent;
+    	}
+    	while(cur != null){
+    		if(prev == cur.parent){
+    			prev = cur;
+    			if(cur.left != null){
+    				cur = cur.left;
+    				continue;
+    			}
+    			if(cur.right != null){
+    				cur = cur.right;
+    				continue;
+    			}
+    		}
+    		else if(prev == cur.left && cur.right != null){
+    			prev = cur;
+    			cur = cur.right;
+    			continue;
+    		}
+    		Node temp = cur.left;
+    		cur.left = cur.right;
+    		cur.right = temp;
+    		prev = cur;
+    		cur = cur == top ? null : cur.parent;
+    	}
 		return this;
     }
 
     /**
      * Recall that a leaf is a Tree with no children.
-     * Your method should be recursive.
+     * The nodes are visited in order through parent pointers.
      *@return int   count of number of leaves in the tree
      */
     public int leafCount(){
-    	if(isLeaf()){
-			return 1;
-		}
-		int l = 0, r = 0;
-		if(hasLeft()){
-			try{
-				l = left().leafCount();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}
-		}
-		if(hasRight()){
-			try{
-				r = right().leafCount();
-			}
-			catch(Exception e){
-				System.err.println("Error: no right node");
-			}
-		}
-		return l + r;
+    	int count = 0;
+    	for(Node n = first(node); n != null; n = next(n)){
+    		if(n.left == null && n.right == null){
+    			count++;
+    		}
+    	}
+		return count;
     }
 
     /**
-     * Your method should be recursive.
+     * Walks down from the root keeping track of the depth, without
+     * descending below the requested level.
      *@return int   count of the number of trees at a given level
      */
     public int levelCount(int level){
-    	if(level == 0){
-    		return 1;
-    	}
-    	int l = 0, r = 0;
-    	if(hasLeft()){
-    		try{
-    			l = left().levelCount(level - 1);
-    		}
-    		catch(Exception e){
-    			System.err.println("Error: no left node");
-    		}
+    	int count = 0, depth = 0;
+    	Node top = node, prev = null, cur = top;
+    	if(top != null){
+    		prev = top.parent;
     	}
-    	if(hasRight()){
-    		try{
-    			r = right().levelCount(level - 1);
+    	while(cur != null){
+    		if(prev == cur.parent){
+    			prev = cur;
+    			if(depth == level){
+    				count++;
+    			}
+    			else if(cur.left != null){
+    				cur = cur.left;
+    				depth++;
+    				continue;
+    			}
+    			else if(cur.right != null){
+    				cur = cur.right;
+    				depth++;
+    				continue;
+    			}
     		}
-    		catch(Exception e){
-    			System.err.println("Error: no right node");
+    		else if(prev == cur.left && cur.right != null){
+    			prev = cur;
+    			cur = cur.right;
+    			depth++;
+    			continue;
     		}
+    		prev = cur;
+    		cur = cur == top ? null : cur.parent;
+    		depth--;
     	}
-    	return l + r;
+    	return count;
     }
 
     /**
@@ -543,24 +837,7 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
      *@return int   the balance factor of the tree
      */
     public int balanceFactor(){
-		int l = -1, r = -1;
-    	if(hasLeft()){
-			try{
-				l = left().height();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}
-		}
-    	if(hasRight()){
-    		try{
-    			r = right().height();
-    		}
-    		catch(Exception e){
-    			System.err.println("Error: no right node");
-    		}
-    	}
-    	return l - r;
+		return balanceFactor(node);
     }
 
     /*
@@ -570,24 +847,10 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
     public void rotateRight(){
     	if(!hasLeft()){
     		System.out.println("Error: no left child");
+    		return;
     	}
-    	Node temp = node.left;
-    	node.left = temp.right;
-    	if(temp.right != null){
-    		temp.right.parent = node;
-    	}
-    	temp.parent = node.parent;
-	    if(node.parent != null){
-    		if(node.parent.left == node){
-	    		temp.parent.left = temp;
-	    	}
-	    	else{
-	    		temp.parent.right = temp;
-	    	}
-	    }
-    	node.parent = temp;
-    	temp.right = node;
-    	node = temp;
+    	rotateRight(node);
+    	refresh(node.parent);
     }
     
     /*
@@ -597,170 +860,455 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
     public void rotateLeft(){
     	if(!hasRight()){
     		System.out.println("Error: no right child");
+    		return;
     	}
-    	Node temp = node.right;
-    	node.right = temp.left;
-    	if(temp.left != null){
-    		temp.left.parent = node;
-    	}
-    	temp.parent = node.parent;
-	    if(node.parent != null){	
-    		if(node.parent.left == node){
-	    		temp.parent.left = temp;
-	    	}
-	    	else{
-	    		temp.parent.right = temp;
-	    	}
-	    }
-    	node.parent = temp;
-    	temp.left = node;
-    	node = temp;
+    	rotateLeft(node);
+    	refresh(node.parent);
     }
     
     /**
-     * balances the tree if it is not already balanced
-     * note: this was my attempt at implementation, but it
-     * is clear that i did not test soon enough and could not 
-     * come up with a way to fix it
+     * Balances the tree if it is not already balanced.
+     * insert and remove already keep the tree balanced, so this is only
+     * needed after the tree has been changed through insertLeft, insertRight
+     * or one of the public rotations, which can leave it skewed by any
+     * amount. The nodes are collected in order and relinked into a
+     * perfectly balanced shape, in linear time however skewed the tree was
      */
     public void balance(){
-    	if(isLeaf()){
+    	if(node == null){
     		return;
     	}
-    	int bf = balanceFactor();
-    	if(bf > 1){
-    		try{
-    			if(hasLeft()){
-	    			int bfl = left().balanceFactor();
-	    			if(bfl < 0){
-	    				left().rotateLeft();
-	    			}
-    			}
-    			rotateRight();
-    		}
-    		catch(Exception e){
-    			System.err.println(1);
-    		}
-    	}
-    	else if(bf < -1){
-    		try{
-    			if(hasRight()){
-	    			int bfr = right().balanceFactor();
-	    			if(bfr > 0){
-	    				right().rotateRight();
-	    			}
-    			}
-    			rotateLeft();
-    		}
-    		catch(Exception e){
-    			System.err.println(2);
-    		}
+    	Object[] nodes = new Object[size()];
+    	Node n = first(node);
+    	for(int i = 0; i < nodes.length; i++){
+    		nodes[i] = n;
+    		n = next(n);
     	}
-    	if(hasLeft()){
-    		try{
-    			left().balance();
+    	Node top = node, parent = top.parent;
+    	boolean left = parent != null && parent.left == top;
+    	Node root = link(nodes, 0, nodes.length, parent);
+    	if(parent != null){
+    		if(left){
+    			parent.left = root;
     		}
-    		catch(Exception e){
-    			System.err.println(3);
+    		else{
+    			parent.right = root;
     		}
     	}
-    	if(hasRight()){
-    		try{
-    			right().balance();
-    		}
-    		catch(Exception e){
-    			System.err.println(4);
-    		}
+    	node = root;
+    	refresh(parent);
+    }
+    
+    /*
+     * Returns the cached height of a node, or -1 for an empty subtree
+     */
+    
+    private int height(Node n){
+    	if(n == null){
+    		return -1;
     	}
+    	return n.height;
     }
-
-    /**
-     * The remaining methods assume that the strings stored
-     * in the binary tree are actually integers.  Your code
-     * will have to convert them to integers using the
-     * Integer.parseInt method.  (If you apply one of these
-     * methods to a tree containing non-integer data, an
-     * exception will be thrown and a message displayed)
+    
+    /*
+     * Returns the balance factor of a node from the cached heights of its children
      */
-
-    /**
-     *@return int   sum of the data values in the tree
+    
+    private int balanceFactor(Node n){
+    	return height(n.left) - height(n.right);
+    }
+    
+    /*
+     * Returns the cached number of nodes in a subtree, or 0 for an empty one
      */
-    public int treeSum(){
-		if(isLeaf()){
-			return Integer.parseInt(node.value.toString());
-		}
-		int l = 0, r = 0;
-		if(hasLeft()){
-			try{
-				l = left().treeSum();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}
-		}
-		if(hasRight()){
-			try{
-				r = right().treeSum();
-			}
-			catch(Exception e){
-				System.err.println("Error: no right node");
-			}
-		}
-		return l + r + Integer.parseInt(node.value.toString());
+    
+    private int size(Node n){
+    	if(n == null){
+    		return 0;
+    	}
+    	return n.size;
     }
-
-    /**
-     * Define a "path sum" in a tree to be the sum of the data
-     * values in a path from the root to a leaf (including the
-     * data values in both the root and the leaf).  This method
-     * returns the maximum of all the path sums in the tree.
-     *@return int   max sum of the paths
+    
+    /*
+     * Recomputes the cached height and subtree size of a node from its children
      */
-    public int maxPathSum(){
-    	if(isLeaf()){
-			return Integer.parseInt(node.value.toString());
-		}
-		int l = 0, r = 0;
-		if(hasLeft()){
-			try{
-				l = left().maxPathSum();
-			}
-			catch(Exception e){
-				System.err.println("Error: no left node");
-			}
-		}
-		if(hasRight()){
-			try{
-				r = right().maxPathSum();
-			}
-			catch(Exception e){
-				System.err.println("Error: no right node");
-			}
-		}
-		return Math.max(l, r) + Integer.parseInt(node.value.toString());
+    
+    private void update(Node n){
+    	n.height = Math.max(height(n.left), height(n.right)) + 1;
+    	n.size = size(n.left) + size(n.right) + 1;
     }
-
-    /**
-     * Doubles the integer value in every Tree of the tree
+    
+    /*
+     * Recomputes the cached heights and sizes of n and all of its ancestors
+     * without rotating anything
      */
-    public void doubles(){
-    	node.value = (E) (Integer.parseInt(node.value.toString()) * 2 + "");
-    	if(hasLeft()){
-    		try{
-    			left().doubles();
+    
+    private void refresh(Node n){
+    	while(n != null){
+    		update(n);
+    		n = n.parent;
+    	}
+    }
+    
+    /*
+     * Puts c in the place n occupies under its parent (or at the root of
+     * this tree); c may be null
+     */
+    
+    private void replace(Node n, Node c){
+    	if(c != null){
+    		c.parent = n.parent;
+    	}
+    	if(n.parent != null){
+    		if(n.parent.left == n){
+    			n.parent.left = c;
+    		}
+    		else{
+    			n.parent.right = c;
+    		}
+    	}
+    	if(n == node){
+    		node = c;
+    	}
+    }
+    
+    /*
+     * Rotates the subtree rooted at n to the right and returns its new root
+     */
+    
+    private Node rotateRight(Node n){
+    	Node temp = n.left;
+    	n.left = temp.right;
+    	if(temp.right != null){
+    		temp.right.parent = n;
+    	}
+    	replace(n, temp);
+    	n.parent = temp;
+    	temp.right = n;
+    	update(n);
+    	update(temp);
+    	rotations++;
+    	return temp;
+    }
+    
+    /*
+     * Rotates the subtree rooted at n to the left and returns its new root
+     */
+    
+    private Node rotateLeft(Node n){
+    	Node temp = n.right;
+    	n.right = temp.left;
+    	if(temp.left != null){
+    		temp.left.parent = n;
+    	}
+    	replace(n, temp);
+    	n.parent = temp;
+    	temp.left = n;
+    	update(n);
+    	update(temp);
+    	rotations++;
+    	return temp;
+    }
+    
+    /*
+     * Updates the height of n and performs the single or double rotation
+     * needed to bring its balance factor back into [-1, 1]; returns the
+     * root of the subtree that now stands where n was
+     */
+    
+    private Node rebalance(Node n){
+    	update(n);
+    	int bf = balanceFactor(n);
+    	if(bf > 1){
+    		if(balanceFactor(n.left) < 0){
+    			rotateLeft(n.left);
+    		}
+    		return rotateRight(n);
+    	}
+    	if(bf < -1){
+    		if(balanceFactor(n.right) > 0){
+    			rotateRight(n.right);
+    		}
+    		return rotateLeft(n);
+    	}
+    	return n;
+    }
+    
+    /*
+     * Rebalances every node from n up to the root of this tree, then
+     * refreshes the heights of any nodes above it (when this tree is a
+     * subtree of a larger one)
+     */
+    
+    private void retrace(Node n){
+    	while(n != null){
+    		Node p = n.parent;
+    		if(n == node){
+    			rebalance(n);
+    			refresh(p);
+    			return;
+    		}
+    		rebalance(n);
+    		n = p;
+    	}
+    }
+    
+    /*
+     * Builds a perfectly balanced subtree from the sorted pairs in [lo, hi)
+     * and returns its root
+     */
+    
+    private Node build(String[] keys, Object[] values, int lo, int hi, Node parent){
+    	if(lo >= hi){
+    		return null;
+    	}
+    	int mid = (lo + hi) >>> 1;
+    	@SuppressWarnings("unchecked")
+    	E value = (E) values[mid];
+    	Node n = new Node(keys[mid], value, parent);
+    	n.left = build(keys, values, lo, mid, n);
+    	n.right = build(keys, values, mid + 1, hi, n);
+    	update(n);
+    	return n;
+    }
+    
+    /*
+     * Relinks the in-order nodes in [lo, hi) into a perfectly balanced
+     * subtree and returns its root
+     */
+    
+    private Node link(Object[] nodes, int lo, int hi, Node parent){
+    	if(lo >= hi){
+    		return null;
+    	}
+    	int mid = (lo + hi) >>> 1;
+    	@SuppressWarnings("unchecked")
+    	Node n = (Node) nodes[mid];
+    	n.parent = parent;
+    	n.left = link(nodes, lo, mid, n);
+    	n.right = link(nodes, mid + 1, hi, n);
+    	update(n);
+    	return n;
+    }
+    
+    /*
+     * Stably sorts keys[lo, hi) and the matching values by key; srcKeys and
+     * srcValues must start out as copies of keys and values
+     */
+    
+    private static void sort(String[] keys, Object[] values, String[] srcKeys, Object[] srcValues, int lo, int hi){
+    	if(hi - lo < 2){
+    		return;
+    	}
+    	int mid = (lo + hi) >>> 1;
+    	sort(srcKeys, srcValues, keys, values, lo, mid);
+    	sort(srcKeys, srcValues, keys, values, mid, hi);
+    	int a = lo, b = mid;
+    	for(int i = lo; i < hi; i++){
+    		if(b >= hi || (a < mid && srcKeys[a].compareTo(srcKeys[b]) <= 0)){
+    			keys[i] = srcKeys[a];
+    			values[i] = srcValues[a++];
     		}
-    		catch(Exception e){
-    			System.err.println("Error: no left node");
+    		else{
+    			keys[i] = srcKeys[b];
+    			values[i] = srcValues[b++];
     		}
     	}
-    	if(hasRight()){
-    		try{
-    			right().doubles();
+    }
+    
+    /*
+     * Returns the leftmost node of the subtree rooted at n, or null if n is null
+     */
+    
+    private Node first(Node n){
+    	if(n == null){
+    		return null;
+    	}
+    	while(n.left != null){
+    		n = n.left;
+    	}
+    	return n;
+    }
+    
+    /*
+     * Returns the in-order successor of n within this tree, following parent
+     * pointers instead of keeping a stack; returns null after the last node
+     */
+    
+    private Node next(Node n){
+    	if(n.right != null){
+    		return first(n.right);
+    	}
+    	while(n != node && n.parent.right == n){
+    		n = n.parent;
+    	}
+    	if(n == node){
+    		return null;
+    	}
+    	return n.parent;
+    }
+    
+    /*
+     * Removes a node with at most one child by splicing its child into its
+     * place, then rebalances from its parent upwards
+     */
+    
+    private void unlink(Node n){
+    	Node p = n.parent;
+    	boolean top = n == node;
+    	replace(n, n.left != null ? n.left : n.right);
+    	if(top){
+    		refresh(p);
+    	}
+    	else{
+    		retrace(p);
+    	}
+    }
+
+    /**
+     * The remaining methods assume that the strings stored
+     * in the binary tree are actually integers.  Your code
+     * will have to convert them to integers using the
+     * Integer.parseInt method.  (If you apply one of these
+     * methods to a tree containing non-integer data, an
+     * exception will be thrown and a message displayed)
+     * Integer values are unboxed rather than parsed, and doubles
+     * keeps them Integers. LongTree stores unboxed long values for
+     * callers that only need these numeric aggregates.
+     */
+
+    /*
+     * Returns a value as an int, unboxing it directly when it is an Integer
+     * and parsing its String form otherwise
+     */
+    
+    static int intValue(Object value){
+    	if(value instanceof Integer){
+    		return (Integer) value;
+    	}
+    	return Integer.parseInt(value.toString());
+    }
+    
+    /*
+     * Returns twice a value: an Integer for an Integer, otherwise the String
+     * form of the doubled number
+     */
+    
+    static <T> T doubled(T value){
+    	if(value instanceof Integer){
+    		return (T) Integer.valueOf((Integer) value * 2);
+    	}
+    	return (T) (Integer.parseInt(value.toString()) * 2 + "");
+    }
+
+    /**
+     *@return int   sum of the data values in the tree
+     */
+    public int treeSum(){
+    	int sum = 0;
+    	for(Node n = first(node); n != null; n = next(n)){
+    		sum += intValue(n.value);
+    	}
+		return sum;
+    }
+
+    /**
+     *@return long   sum of the data values in the tree, without overflowing
+     */
+    public long longTreeSum(){
+    	long sum = 0;
+    	for(Node n = first(node); n != null; n = next(n)){
+    		sum += intValue(n.value);
+    	}
+		return sum;
+    }
+
+    /**
+     * Define a "path sum" in a tree to be the sum of the data
+     * values in a path from the root to a leaf (including the
+     * data values in both the root and the leaf).  This method
+     * returns the maximum of all the path sums in the tree.
+     * A missing child counts as a path of sum 0, so a path may also
+     * end at a node with only one child. The running sum is kept while
+     * walking the tree through parent pointers.
+     *@return int   max sum of the paths
+     */
+    public int maxPathSum(){
+    	int best = Integer.MIN_VALUE, sum = 0;
+    	Node top = node, prev = null, cur = top;
+    	if(top == null){
+    		return 0;
+    	}
+    	prev = top.parent;
+    	while(cur != null){
+    		if(prev == cur.parent){
+    			prev = cur;
+    			sum += intValue(cur.value);
+    			if(cur.left == null || cur.right == null){
+    				best = Math.max(best, sum);
+    			}
+    			if(cur.left != null){
+    				cur = cur.left;
+    				continue;
+    			}
+    			if(cur.right != null){
+    				cur = cur.right;
+    				continue;
+    			}
     		}
-    		catch(Exception e){
-    			System.err.println("Error: no right node");
+    		else if(prev == cur.left && cur.right != null){
+    			prev = cur;
+    			cur = cur.right;
+    			continue;
     		}
+    		sum -= intValue(cur.value);
+    		prev = cur;
+    		cur = cur == top ? null : cur.parent;
+    	}
+		return best;
+    }
+
+    /**
+     * Doubles the integer value in every Tree of the tree
+     */
+    public void doubles(){
+    	for(Node n = first(node); n != null; n = next(n)){
+    		n.value = doubled(n.value);
+    	}
+    }
+    
+    /*
+     * The parallel versions of treeSum, maxPathSum, leafCount and doubles
+     * split the tree at every subtree larger than PARALLEL_THRESHOLD nodes
+     * and run the pieces as fork/join tasks in the given pool; smaller trees
+     * are handled by a single task. (size() needs no parallel version, it is
+     * read from the root.)
+     */
+    
+    public int parallelTreeSum(ForkJoinPool pool){
+    	if(node == null){
+    		return 0;
+    	}
+    	return pool.invoke(new AggregateTask(node, SUM));
+    }
+    
+    public int parallelMaxPathSum(ForkJoinPool pool){
+    	if(node == null){
+    		return 0;
+    	}
+    	return pool.invoke(new AggregateTask(node, MAX_PATH_SUM));
+    }
+    
+    public int parallelLeafCount(ForkJoinPool pool){
+    	if(node == null){
+    		return 0;
+    	}
+    	return pool.invoke(new AggregateTask(node, LEAF_COUNT));
+    }
+    
+    public void parallelDoubles(ForkJoinPool pool){
+    	if(node != null){
+    		pool.invoke(new AggregateTask(node, DOUBLES));
     	}
     }
     
@@ -774,34 +1322,283 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
     		return null;
     	}
     	String[] keys = new String[size];
-    	BinarySearchTree[] nodes = new BinarySearchTree[size];
+    	Object[] nodes = new Object[size];
     	int i = 0, j = 1;
-    	nodes[0] = this;
-    	keys[0] = this.node.key;
-    	while(i < size){
-    		if(nodes[i].hasLeft()){
-    			try{
-    				nodes[j] = nodes[i].left();
-    				keys[j] = nodes[i].left().node.key;
-    				j++;
-    			}
-    			catch(Exception e){
-    				System.err.print("No left node");
+    	nodes[0] = node;
+    	while(i < j){
+    		@SuppressWarnings("unchecked")
+    		Node n = (Node) nodes[i];
+    		keys[i] = n.key;
+    		if(n.left != null){
+    			nodes[j++] = n.left;
+    		}
+    		if(n.right != null){
+    			nodes[j++] = n.right;
+    		}
+    		i++;
+    	}
+    	return keys;
+    }
+    
+    /*
+     * Passes every key and its value to an action, in ascending key order
+     */
+    
+    public void forEach(BiConsumer<? super String, ? super E> action){
+    	for(Node n = first(node); n != null; n = next(n)){
+    		action.accept(n.key, n.value);
+    	}
+    }
+    
+    /*
+     * Copies the pairs with keys after a given key (or all of them if it is
+     * null) into keys and values from index from until the arrays are full,
+     * and returns the index after the last one copied
+     */
+    
+    public int page(String after, String[] keys, Object[] values, int from){
+    	Node n = after == null ? first(node) : ceilingNode(after);
+    	if(n != null && after != null && n.key.equals(after)){
+    		n = next(n);
+    	}
+    	for(; n != null && from < keys.length; n = next(n)){
+    		keys[from] = n.key;
+    		values[from] = n.value;
+    		from++;
+    	}
+    	return from;
+    }
+    
+    /*
+     * Returns an iterator over the keys of the tree in ascending order
+     */
+    
+    public Iterator<String> iterator(){
+    	return new KeyIterator(first(node), null);
+    }
+    
+    /*
+     * Returns the keys k with from <= k < to in ascending order, computed
+     * lazily as they are iterated; a null bound leaves that side open
+     */
+    
+    public Iterable<String> range(final String from, final String to){
+    	return new Iterable<String>(){
+    		public Iterator<String> iterator(){
+    			return new KeyIterator(from == null ? first(node) : ceilingNode(from), to);
+    		}
+    	};
+    }
+    
+    /*
+     * Returns the keys strictly less than to, in ascending order
+     */
+    
+    public Iterable<String> head(String to){
+    	return range(null, to);
+    }
+    
+    /*
+     * Returns the keys greater than or equal to from, in ascending order
+     */
+    
+    public Iterable<String> tail(String from){
+    	return range(from, null);
+    }
+    
+    /*
+     * Returns the keys starting with a given prefix, in ascending order
+     */
+    
+    public Iterable<String> prefix(String prefix){
+    	char[] c = prefix.toCharArray();
+    	int i = c.length - 1;
+    	while(i >= 0 && c[i] == Character.MAX_VALUE){
+    		i--;
+    	}
+    	if(i < 0){
+    		return range(prefix, null);
+    	}
+    	c[i]++;
+    	return range(prefix, new String(c, 0, i + 1));
+    }
+    
+    /*
+     * Returns the smallest key in the tree, or null if it is empty
+     */
+    
+    public String first(){
+    	Node n = first(node);
+    	return n == null ? null : n.key;
+    }
+    
+    /*
+     * Returns the largest key in the tree, or null if it is empty
+     */
+    
+    public String last(){
+    	Node n = node;
+    	if(n == null){
+    		return null;
+    	}
+    	while(n.right != null){
+    		n = n.right;
+    	}
+    	return n.key;
+    }
+    
+    /*
+     * Returns the largest key less than or equal to a given key, or null
+     * if there is none
+     */
+    
+    public String floor(String key){
+    	Node n = node, result = null;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		if(c < 0){
+    			n = n.left;
+    		}
+    		else{
+    			result = n;
+    			if(c == 0){
+    				break;
     			}
+    			n = n.right;
+    		}
+    	}
+    	return result == null ? null : result.key;
+    }
+    
+    /*
+     * Returns the smallest key greater than or equal to a given key, or null
+     * if there is none
+     */
+    
+    public String ceiling(String key){
+    	Node n = ceilingNode(key);
+    	return n == null ? null : n.key;
+    }
+    
+    /*
+     * Returns the number of keys in the tree strictly less than a given key
+     * (whether or not the key itself is present), using the subtree sizes
+     * cached in the nodes on the search path
+     */
+    
+    public int rank(String key){
+    	int rank = 0;
+    	Node n = node;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		if(c < 0){
+    			n = n.left;
     		}
-    		if(nodes[i].hasRight()){
-    			try{
-    				nodes[j] = nodes[i].right();
-    				keys[j] = nodes[i].right().node.key;
-    				j++;
+    		else{
+    			rank += size(n.left);
+    			if(c == 0){
+    				break;
     			}
-    			catch(Exception e){
-    				System.err.print("No right node");
+    			rank++;
+    			n = n.right;
+    		}
+    	}
+    	return rank;
+    }
+    
+    /*
+     * Returns the key with exactly k smaller keys in the tree (so select(0)
+     * is the first key), or null if k is not between 0 and size() - 1
+     */
+    
+    public String select(int k){
+    	if(k < 0 || k >= size()){
+    		return null;
+    	}
+    	Node n = node;
+    	while(true){
+    		int l = size(n.left);
+    		if(k < l){
+    			n = n.left;
+    		}
+    		else if(k > l){
+    			k -= l + 1;
+    			n = n.right;
+    		}
+    		else{
+    			return n.key;
+    		}
+    	}
+    }
+    
+    /*
+     * Returns the node with the smallest key greater than or equal to a
+     * given key, or null if there is none
+     */
+    
+    private Node ceilingNode(String key){
+    	Node n = node, result = null;
+    	while(n != null){
+    		int c = key.compareTo(n.key);
+    		if(c > 0){
+    			n = n.right;
+    		}
+    		else{
+    			result = n;
+    			if(c == 0){
+    				break;
     			}
+    			n = n.left;
     		}
-    		i++;
     	}
-    	return keys;
+    	return result;
+    }
+    
+    /*
+     * Returns an iterator over the keys in level order
+     */
+    
+    public Iterator<String> levelIterator(){
+    	return new LevelIterator();
+    }
+    
+    /*
+     * Passes every pair to a visitor in level order, telling it when each
+     * level ends
+     */
+    
+    public void levelOrder(LevelVisitor<? super E> visitor){
+    	if(node == null){
+    		return;
+    	}
+    	NodeQueue queue = new NodeQueue();
+    	queue.add(node);
+    	for(int level = 0; queue.size > 0; level++){
+    		int count = queue.size;
+    		for(int i = 0; i < count; i++){
+    			Node n = queue.poll();
+    			visitor.visit(n.key, n.value, level);
+    			queue.addChildren(n);
+    		}
+    		visitor.endLevel(level, count);
+    	}
+    }
+    
+    /*
+     * Returns the number of nodes on each level, from the root down, in one
+     * pass (levelCount(i) is element i)
+     */
+    
+    public int[] levelCounts(){
+    	final int[] counts = new int[height() + 1];
+    	levelOrder(new LevelVisitor<E>(){
+    		public void visit(String key, E value, int level){
+    		}
+    		public void endLevel(int level, int count){
+    			counts[level] = count;
+    		}
+    	});
+    	return counts;
     }
     
     /*
@@ -809,24 +1606,26 @@ public class BinarySearchTree<E extends Comparable<E>> implements TreeInterface<
      */
     
     public void printLevelOrder(){
-    	ArrayList<Node> printQueue = new ArrayList<Node>();
-    	Node n = node;
-    	while(n != null){
-	    	System.out.println(n.key.toString());
-	    	if(n.left != null){
-	    		printQueue.add(n.left);
-	    	}
-	    	
-	    	if(n.right != null){
-	    		printQueue.add(n.right);
-	    	}
-	    	if(!printQueue.isEmpty()){
-	    		n = printQueue.remove(0);
-	    	}
-	    	else{
-	    		n = null;
-	    	}
+    	try{
+    		printLevelOrder(new OutputStreamWriter(System.out));
+    	}
+    	catch(IOException e){
+    		System.err.println(e.getMessage());
+    	}
+    }
+    
+    /*
+     * Writes the keys in level order, one per line, through a single
+     * buffered writer that is flushed (but not closed) at the end
+     */
+    
+    public void printLevelOrder(Writer out) throws IOException{
+    	BufferedWriter writer = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+    	for(Iterator<String> i = levelIterator(); i.hasNext();){
+    		writer.write(i.next());
+    		writer.newLine();
     	}
+    	writer.flush();
     }
     
     /*
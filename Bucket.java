@@ -0,0 +1,81 @@
+import java.util.function.BiConsumer;
+
+/**
+ * Bucket.java
+ */
+
+/*
+ * The operations HashTable needs from one of its buckets, so a bucket can be
+ * a small sorted array (SmallBucket) while it holds a few pairs and a
+ * BinarySearchTree once it holds more. Like BinarySearchTree, insert prints
+ * an error for a key that already exists and remove for one that does not
+ */
+
+public interface Bucket<E>{
+
+    public abstract E search(String key);
+
+    public abstract void insert(String key, E value);
+
+    /**
+     * Inserts the pairs from index from up to (not including) to; keys
+     * already present, or repeated, keep their first value
+     */
+    public abstract void insertAll(String[] keys, E[] values, int from, int to);
+
+    /**
+     * Looks up keys[from, to), which must be in ascending order, putting the
+     * value for keys[i] (or null) in results[i]
+     */
+    public abstract void searchAll(String[] keys, int from, int to, Object[] results);
+
+    public abstract void remove(String key);
+
+    /**
+     * Removes keys[from, to), which must be in ascending order, ignoring
+     * keys that are not present; returns the number removed
+     */
+    public abstract int removeAll(String[] keys, int from, int to);
+
+    public abstract int size();
+
+    public abstract boolean isEmpty();
+
+    /**
+     * Returns one less than the most comparisons a lookup can take
+     */
+    public abstract int height();
+
+    /**
+     * Returns the number of rotations done while rebalancing
+     */
+    public abstract long rotations();
+
+    public abstract String[] keys();
+
+    /**
+     * Passes every pair to an action, in ascending key order
+     */
+    public abstract void forEach(BiConsumer<? super String, ? super E> action);
+
+    /**
+     * Copies the pairs whose keys come after a given key (or all of them if
+     * it is null), in ascending order, into keys and values starting at
+     * index from, until the arrays are full; returns the index after the
+     * last pair copied
+     */
+    public abstract int page(String after, String[] keys, Object[] values, int from);
+
+    public abstract int treeSum();
+
+    /**
+     * Adds up the same values as treeSum, but as a long, so a sum too large
+     * for an int does not wrap
+     */
+    public abstract long longTreeSum();
+
+    public abstract int leafCount();
+
+    public abstract void doubles();
+
+}
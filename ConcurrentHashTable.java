@@ -0,0 +1,408 @@
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ConcurrentHashTable.java
+ */
+
+/*
+ * This class is a thread-safe hash table. Like HashTable, each bucket holds a
+ * balanced binary search tree of the keys that hash to it, but the trees are
+ * immutable: a put or remove builds a new copy of the path from the bucket's
+ * root down to the changed node (sharing every other node) and then publishes
+ * the new root with a single volatile write.
+ * 
+ * Writers lock only the stripe their key hashes to. The number of buckets is
+ * always a power of two and never smaller than the number of stripes, so two
+ * keys in the same bucket always share a stripe. Readers take no lock at all:
+ * every node they can reach is fully built before it is published and never
+ * changes afterwards.
+ * 
+ * Growing the table takes every stripe lock, so no write is in progress while
+ * the buckets are copied; readers keep using the old array (which is frozen
+ * at that point) until the new one is published.
+ */
+
+public class ConcurrentHashTable<E> implements TableInterface<E>{
+	
+	private static final double DEFAULT_LOAD_FACTOR = 0.75;
+	private static final int DEFAULT_STRIPES = 16;
+	
+	/*
+	 * An immutable tree node; all fields are final so a node is safely
+	 * visible to any thread that reads a reference to it
+	 */
+	
+	private static final class Node<E>{
+		private final String key;
+		private final int hash;
+		private final E value;
+		private final Node<E> left;
+		private final Node<E> right;
+		private final int height;
+		
+		private Node(String key, int hash, E value, Node<E> left, Node<E> right){
+			this.key = key;
+			this.hash = hash;
+			this.value = value;
+			this.left = left;
+			this.right = right;
+			this.height = Math.max(height(left), height(right)) + 1;
+		}
+	}
+	
+	private volatile AtomicReferenceArray<Node<E>> table;
+	private final ReentrantLock[] locks;
+	private final LongAdder count = new LongAdder();
+	private final double loadFactor;
+	private final HashFunction hashFunction;
+	
+	/*
+	 * Constructs a table with at least the given number of buckets and
+	 * sixteen lock stripes
+	 */
+	
+	public ConcurrentHashTable(int size){
+		this(size, DEFAULT_STRIPES, DEFAULT_LOAD_FACTOR, new MurmurHash());
+	}
+	
+	/*
+	 * Constructs a table with at least the given number of buckets and lock
+	 * stripes (both rounded up to powers of two) which doubles once the number
+	 * of pairs exceeds loadFactor times the number of buckets
+	 */
+	
+	public ConcurrentHashTable(int size, int stripes, double loadFactor, HashFunction hashFunction){
+		if(size < 1 || stripes < 1 || !(loadFactor > 0) || hashFunction == null){
+			throw new IllegalArgumentException();
+		}
+		this.loadFactor = loadFactor;
+		this.hashFunction = hashFunction;
+		locks = new ReentrantLock[powerOfTwo(stripes)];
+		for(int i = 0; i < locks.length; i++){
+			locks[i] = new ReentrantLock();
+		}
+		table = new AtomicReferenceArray<Node<E>>(powerOfTwo(Math.max(size, locks.length)));
+	}
+	
+	/*
+	 * Inserts a given key-value pair into its bucket, holding only the lock
+	 * for the key's stripe
+	 */
+	
+	public void put(String key, E value){
+		int h = hashFunction.hash(key);
+		ReentrantLock lock = locks[h & (locks.length - 1)];
+		lock.lock();
+		try{
+			AtomicReferenceArray<Node<E>> t = table;
+			int i = h & (t.length() - 1);
+			Node<E> root = t.get(i);
+			Node<E> updated = insert(root, key, h, value);
+			if(updated == root){
+				System.err.println("Key already exists");
+				return;
+			}
+			t.set(i, updated);
+			count.increment();
+		}
+		finally{
+			lock.unlock();
+		}
+		if(count.sum() > loadFactor * table.length()){
+			resize();
+		}
+	}
+	
+	/*
+	 * Returns the value associated with a given key if that key exists;
+	 * returns null if it does not. Never blocks
+	 */
+	
+	public E get(String key){
+		Node<E> n = find(key);
+		if(n == null){
+			return null;
+		}
+		return n.value;
+	}
+	
+	/*
+	 * Returns true if a given key is in the table, false otherwise. Never blocks
+	 */
+	
+	public boolean hasKey(String key){
+		return find(key) != null;
+	}
+	
+	/*
+	 * Removes the key-value pair associated with a given key, holding only
+	 * the lock for the key's stripe
+	 */
+	
+	public void remove(String key){
+		int h = hashFunction.hash(key);
+		ReentrantLock lock = locks[h & (locks.length - 1)];
+		lock.lock();
+		try{
+			AtomicReferenceArray<Node<E>> t = table;
+			int i = h & (t.length() - 1);
+			Node<E> root = t.get(i);
+			Node<E> updated = remove(root, key);
+			if(updated == root){
+				System.err.println("Key does not exist");
+				return;
+			}
+			t.set(i, updated);
+			count.decrement();
+		}
+		finally{
+			lock.unlock();
+		}
+	}
+	
+	/*
+	 * Returns the number of key-value pairs stored in the table; while other
+	 * threads are writing this is only an estimate
+	 */
+	
+	public int size(){
+		return (int) count.sum();
+	}
+	
+	/*
+	 * Returns an array of Strings containing the keys present in the table.
+	 * Each bucket is read at a single point in time, but writes to other
+	 * buckets made during the call may or may not be included
+	 */
+	
+	public String[] keys(){
+		AtomicReferenceArray<Node<E>> t = table;
+		ArrayList<String> keys = new ArrayList<String>(size());
+		for(int i = 0; i < t.length(); i++){
+			addKeys(t.get(i), keys);
+		}
+		return keys.toArray(new String[keys.size()]);
+	}
+	
+	/*
+	 * Returns an array of ints corresponding to the number of
+	 * key-value pairs in each bucket
+	 */
+	
+	public int[] distribution(){
+		AtomicReferenceArray<Node<E>> t = table;
+		int[] dist = new int[t.length()];
+		for(int i = 0; i < dist.length; i++){
+			dist[i] = count(t.get(i));
+		}
+		return dist;
+	}
+	
+	private Node<E> find(String key){
+		AtomicReferenceArray<Node<E>> t = table;
+		Node<E> n = t.get(hashFunction.hash(key) & (t.length() - 1));
+		while(n != null){
+			int c = key.compareTo(n.key);
+			if(c > 0){
+				n = n.right;
+			}
+			else if(c < 0){
+				n = n.left;
+			}
+			else{
+				return n;
+			}
+		}
+		return null;
+	}
+	
+	/*
+	 * Doubles the number of buckets while holding every stripe lock, unless
+	 * another thread already did so
+	 */
+	
+	private void resize(){
+		for(ReentrantLock lock: locks){
+			lock.lock();
+		}
+		try{
+			AtomicReferenceArray<Node<E>> t = table;
+			if(count.sum() <= loadFactor * t.length()){
+				return;
+			}
+			AtomicReferenceArray<Node<E>> grown = new AtomicReferenceArray<Node<E>>(t.length() * 2);
+			for(int i = 0; i < t.length(); i++){
+				transfer(t.get(i), grown);
+			}
+			table = grown;
+		}
+		finally{
+			for(int i = locks.length - 1; i >= 0; i--){
+				locks[i].unlock();
+			}
+		}
+	}
+	
+	/*
+	 * Inserts every node of an old bucket into its bucket in the grown
+	 * array, using the hash cached in the node
+	 */
+	
+	private void transfer(Node<E> n, AtomicReferenceArray<Node<E>> grown){
+		if(n == null){
+			return;
+		}
+		int i = n.hash & (grown.length() - 1);
+		grown.set(i, insert(grown.get(i), n.key, n.hash, n.value));
+		transfer(n.left, grown);
+		transfer(n.right, grown);
+	}
+	
+	private static <E> void addKeys(Node<E> n, ArrayList<String> keys){
+		if(n == null){
+			return;
+		}
+		addKeys(n.left, keys);
+		keys.add(n.key);
+		addKeys(n.right, keys);
+	}
+	
+	private static <E> int count(Node<E> n){
+		if(n == null){
+			return 0;
+		}
+		return count(n.left) + count(n.right) + 1;
+	}
+	
+	private static <E> int height(Node<E> n){
+		if(n == null){
+			return -1;
+		}
+		return n.height;
+	}
+	
+	/*
+	 * Returns a copy of the tree rooted at n with the pair added, sharing
+	 * every node off the search path; returns n itself if the key exists
+	 */
+	
+	private static <E> Node<E> insert(Node<E> n, String key, int hash, E value){
+		if(n == null){
+			return new Node<E>(key, hash, value, null, null);
+		}
+		int c = key.compareTo(n.key);
+		if(c < 0){
+			Node<E> l = insert(n.left, key, hash, value);
+			if(l == n.left){
+				return n;
+			}
+			return balance(n, l, n.right);
+		}
+		if(c > 0){
+			Node<E> r = insert(n.right, key, hash, value);
+			if(r == n.right){
+				return n;
+			}
+			return balance(n, n.left, r);
+		}
+		return n;
+	}
+	
+	/*
+	 * Returns a copy of the tree rooted at n without the given key, sharing
+	 * every node off the search path; returns n itself if the key is absent
+	 */
+	
+	private static <E> Node<E> remove(Node<E> n, String key){
+		if(n == null){
+			return null;
+		}
+		int c = key.compareTo(n.key);
+		if(c < 0){
+			Node<E> l = remove(n.left, key);
+			if(l == n.left){
+				return n;
+			}
+			return balance(n, l, n.right);
+		}
+		if(c > 0){
+			Node<E> r = remove(n.right, key);
+			if(r == n.right){
+				return n;
+			}
+			return balance(n, n.left, r);
+		}
+		if(n.left == null){
+			return n.right;
+		}
+		if(n.right == null){
+			return n.left;
+		}
+		Node<E> s = n.right;
+		while(s.left != null){
+			s = s.left;
+		}
+		return balance(s, n.left, remove(n.right, s.key));
+	}
+	
+	/*
+	 * Returns a new node holding the pair stored in n with the given
+	 * children, rotating if the children's heights differ by more than one
+	 */
+	
+	private static <E> Node<E> balance(Node<E> n, Node<E> l, Node<E> r){
+		if(height(l) > height(r) + 1){
+			if(height(l.left) >= height(l.right)){
+				return copy(l, l.left, copy(n, l.right, r));
+			}
+			return copy(l.right, copy(l, l.left, l.right.left), copy(n, l.right.right, r));
+		}
+		if(height(r) > height(l) + 1){
+			if(height(r.right) >= height(r.left)){
+				return copy(r, copy(n, l, r.left), r.right);
+			}
+			return copy(r.left, copy(n, l, r.left.left), copy(r, r.left.right, r.right));
+		}
+		return copy(n, l, r);
+	}
+	
+	private static <E> Node<E> copy(Node<E> n, Node<E> l, Node<E> r){
+		return new Node<E>(n.key, n.hash, n.value, l, r);
+	}
+	
+	private static int powerOfTwo(int n){
+		int p = 1;
+		while(p < n){
+			p *= 2;
+		}
+		return p;
+	}
+	
+	/*
+	 * Testing main
+	 */
+	
+	public static void main(String[] args) throws InterruptedException{
+		final ConcurrentHashTable<Integer> h = new ConcurrentHashTable<Integer>(16);
+		Thread[] threads = new Thread[4];
+		for(int t = 0; t < threads.length; t++){
+			final int id = t;
+			threads[t] = new Thread(){
+				public void run(){
+					for(int i = 0; i < 10000; i++){
+						h.put(id + "-" + i, i);
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for(Thread t: threads){
+			t.join();
+		}
+		System.out.println(h.size() + " " + h.keys().length + " " + h.get("3-9999"));
+	}
+	
+}
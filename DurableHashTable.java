@@ -0,0 +1,742 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+/**
+ * DurableHashTable.java
+ */
+
+/*
+ * This class is a HashTable whose puts and removes survive a crash. Every
+ * change is appended to a write-ahead log next to a Snapshot of the table;
+ * opening the table loads the snapshot and replays the log on top of it, and
+ * compact() writes a new snapshot and empties the log.
+ *
+ * Each log record is its length, a CRC32 of its body, and the body (the
+ * operation, the key's length and chars, and for a put the value's bytes as
+ * written by a ValueCodec). A record torn by a crash fails its length or
+ * checksum and is cut off, along with anything after it, when the log is
+ * replayed.
+ *
+ * Changes are made to the table and appended to an in-memory log buffer
+ * under a write lock, but the log is forced to disk outside of it, by group
+ * commit: the first writer that needs its record on disk becomes the leader,
+ * writes out everything appended so far and forces it once, and every writer
+ * whose record was part of that write returns without forcing anything
+ * itself. With many writers one fsync covers many records, so the cost of
+ * each fsync is shared instead of paid per operation. How long a writer
+ * waits is set by the Durability:
+ *
+ *   PER_OP     put and remove return once their record is on disk
+ *   PER_BATCH  put and remove return at once; putAll and sync() return once
+ *              everything before them is on disk
+ *   PERIODIC   nothing waits; a background thread syncs at a fixed interval
+ *
+ * A change is visible to readers as soon as it has been made, which is
+ * before its record is on disk: a PER_OP writer is still waiting for its sync
+ * while other threads can already read the change. Until its record is
+ * forced, the table remembers how to take each change back.
+ *
+ * If writing or forcing the log fails, the log is marked failed: no record
+ * is reported durable unless it was written, every writer waiting on a sync
+ * gets the error, and every later change is refused. Every change whose
+ * record did not reach the disk is then undone, newest first, before the
+ * table is read or changed again, so after a failure readers see the table
+ * as the durable records left it. The table has to be reopened to be written
+ * again, which replays whatever did reach the disk.
+ *
+ * Reads take the read lock and never touch the log.
+ */
+
+public class DurableHashTable<E extends Comparable> implements TableInterface<E>{
+
+	public enum Durability{ PER_OP, PER_BATCH, PERIODIC }
+
+	private static final byte PUT = 1;
+	private static final byte REMOVE = 2;
+	private static final int BUFFER = 1 << 16;
+	private static final long DEFAULT_INTERVAL = 100;
+
+	/*
+	 * How to take back the change logged as record seq if the record never
+	 * reaches the disk: remove the key a put added, or put back the value a
+	 * remove took
+	 */
+
+	private static class Undo<E>{
+		private final long seq;
+		private final byte op;
+		private final String key;
+		private final E value;
+
+		private Undo(long seq, byte op, String key, E value){
+			this.seq = seq;
+			this.op = op;
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private HashTable<E> table;
+	private final ValueCodec<E> codec;
+	private final Durability durability;
+	private final String snapshotPath;
+	private final RandomAccessFile file;
+	private final FileChannel log;
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private ScheduledExecutorService syncer;
+
+	/*
+	 * The records appended but not yet written out, the number of records
+	 * appended so far, and the undo for every change whose record is not
+	 * known to be on disk, oldest first; all guarded by logLock
+	 */
+
+	private final ReentrantLock logLock = new ReentrantLock();
+	private ByteBuffer pending = ByteBuffer.allocate(BUFFER);
+	private ByteBuffer spare = ByteBuffer.allocate(BUFFER);
+	private long appended;
+	private final ArrayDeque<Undo<E>> undo = new ArrayDeque<Undo<E>>();
+
+	/*
+	 * The number of records known to be on disk, whether a leader is
+	 * currently writing, and the number of times the log has been forced;
+	 * all guarded by syncLock
+	 */
+
+	private final ReentrantLock syncLock = new ReentrantLock();
+	private final Condition synced = syncLock.newCondition();
+	private long durable;
+	private boolean syncing;
+	private long syncs;
+
+	/*
+	 * The error that failed the log, if writing or forcing it has failed
+	 */
+
+	private volatile IOException failure;
+	private volatile boolean rolledBack;
+
+	/*
+	 * Opens (or creates) the table stored at path, which syncs every put and
+	 * remove before returning
+	 */
+
+	public DurableHashTable(String path, ValueCodec<E> codec) throws IOException{
+		this(path, codec, Durability.PER_OP);
+	}
+
+	public DurableHashTable(String path, ValueCodec<E> codec, Durability durability) throws IOException{
+		this(path, codec, durability, DEFAULT_INTERVAL, new MurmurHash());
+	}
+
+	/*
+	 * Opens (or creates) the table stored at path: its snapshot is path +
+	 * ".snapshot" and its log is path + ".log". intervalMillis is how often
+	 * a PERIODIC table syncs, and is ignored otherwise
+	 */
+
+	public DurableHashTable(String path, ValueCodec<E> codec, Durability durability, long intervalMillis, HashFunction hashFunction) throws IOException{
+		if(codec == null || durability == null || intervalMillis < 1 || hashFunction == null){
+			throw new IllegalArgumentException();
+		}
+		this.codec = codec;
+		this.durability = durability;
+		this.snapshotPath = path + ".snapshot";
+		if(new File(snapshotPath).exists()){
+			table = Snapshot.readTable(snapshotPath, codec, hashFunction);
+		}
+		else{
+			table = new HashTable<E>(16, hashFunction);
+		}
+		File logFile = new File(path + ".log");
+		long valid = logFile.exists() ? replay(logFile) : 0;
+		file = new RandomAccessFile(logFile, "rw");
+		log = file.getChannel();
+		log.truncate(valid);
+		log.position(valid);
+		if(durability == Durability.PERIODIC){
+			syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread t = new Thread(r, "DurableHashTable sync");
+				t.setDaemon(true);
+				return t;
+			});
+			syncer.scheduleWithFixedDelay(() -> {
+				try{
+					sync();
+				}
+				catch(IOException e){
+					// the log has failed, so stop syncing it
+					System.err.println("Log sync failed: " + e.getMessage());
+					throw new UncheckedIOException(e);
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * Inserts a given key-value pair and logs it, unless the key already
+	 * exists
+	 */
+
+	public void put(String key, E value){
+		long seq;
+		lock.writeLock().lock();
+		try{
+			checkLog();
+			if(table.hasKey(key)){
+				System.err.println("Key already exists");
+				return;
+			}
+			table.put(key, value);
+			seq = append(PUT, key, value, true);
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+		committed(seq, Durability.PER_OP);
+	}
+
+	/*
+	 * Inserts a batch of key-value pairs like HashTable.putAll, then waits
+	 * (unless the table is PERIODIC) for the whole batch to reach the disk
+	 * with a single sync. Every pair is logged; replaying a put of a key that
+	 * already exists does nothing, just as it did in the batch
+	 */
+
+	public void putAll(String[] keys, E[] values){
+		long seq = 0;
+		lock.writeLock().lock();
+		try{
+			checkLog();
+			boolean[] added = new boolean[keys.length];
+			for(int i = 0; i < keys.length; i++){
+				added[i] = !table.hasKey(keys[i]);
+			}
+			table.putAll(keys, values);
+			for(int i = 0; i < keys.length; i++){
+				seq = append(PUT, keys[i], values[i], added[i]);
+			}
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+		committed(seq, Durability.PER_BATCH);
+	}
+
+	public E get(String key){
+		recover();
+		lock.readLock().lock();
+		try{
+			return table.get(key);
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean hasKey(String key){
+		recover();
+		lock.readLock().lock();
+		try{
+			return table.hasKey(key);
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Removes the pair with a given key and logs it, if the key exists
+	 */
+
+	public void remove(String key){
+		long seq;
+		lock.writeLock().lock();
+		try{
+			checkLog();
+			if(!table.hasKey(key)){
+				System.err.println("Key does not exist");
+				return;
+			}
+			E old = table.get(key);
+			table.remove(key);
+			seq = append(REMOVE, key, old, true);
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+		committed(seq, Durability.PER_OP);
+	}
+
+	public int size(){
+		recover();
+		lock.readLock().lock();
+		try{
+			return table.size();
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	public String[] keys(){
+		recover();
+		lock.readLock().lock();
+		try{
+			return table.keys();
+		}
+		finally{
+			lock.readLock().unlock();
+		}
+	}
+
+	/*
+	 * Finishes any rehash in progress first, so it needs the write lock
+	 */
+
+	public int[] distribution(){
+		recover();
+		lock.writeLock().lock();
+		try{
+			return table.distribution();
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Returns once every change made so far is on disk
+	 */
+
+	public void sync() throws IOException{
+		long seq;
+		logLock.lock();
+		try{
+			seq = appended;
+		}
+		finally{
+			logLock.unlock();
+		}
+		sync(seq);
+	}
+
+	/*
+	 * Writes the whole table to a new snapshot and empties the log. Writers
+	 * wait until it is done; a crash part way through leaves either the old
+	 * snapshot and the full log, or the new snapshot and a log whose replay
+	 * changes nothing. The log is only truncated once Snapshot.write has
+	 * returned, by which time the rename of the new snapshot is on disk too
+	 */
+
+	public void compact() throws IOException{
+		lock.writeLock().lock();
+		try{
+			sync();
+			lead();
+			try{
+				Snapshot.write(table, snapshotPath, codec);
+				log.truncate(0);
+				log.position(0);
+				log.force(true);
+			}
+			finally{
+				follow();
+			}
+		}
+		finally{
+			lock.writeLock().unlock();
+		}
+	}
+
+	/*
+	 * Stops the background sync and waits for a sync it has started, then
+	 * syncs everything and closes the log
+	 */
+
+	public void close() throws IOException{
+		if(syncer != null){
+			syncer.shutdown();
+			try{
+				syncer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the background sync");
+			}
+		}
+		try{
+			sync();
+		}
+		finally{
+			file.close();
+		}
+	}
+
+	/*
+	 * Returns the number of times the log has been forced to disk
+	 */
+
+	public long syncs(){
+		syncLock.lock();
+		try{
+			return syncs;
+		}
+		finally{
+			syncLock.unlock();
+		}
+	}
+
+	/*
+	 * Adds a record to the log buffer and returns its sequence number. Only
+	 * called with the write lock held, so records are in the same order as
+	 * the changes they describe. If changed, the table was changed by the
+	 * record and an undo is kept for it; the undo of a remove puts back
+	 * value, which is not written to the log
+	 */
+
+	private long append(byte op, String key, E value, boolean changed){
+		int length = 5 + 2 * key.length() + (op == PUT ? codec.size(value) : 0);
+		long seq;
+		boolean full;
+		logLock.lock();
+		try{
+			if(pending.remaining() < 8 + length){
+				ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + 8 + length));
+				pending.flip();
+				larger.put(pending);
+				pending = larger;
+			}
+			int start = pending.position();
+			pending.putInt(length);
+			pending.putInt(0);
+			pending.put(op);
+			pending.putInt(key.length());
+			for(int i = 0; i < key.length(); i++){
+				pending.putChar(key.charAt(i));
+			}
+			if(op == PUT){
+				codec.write(pending, pending.position(), value);
+			}
+			pending.position(start + 8 + length);
+			CRC32 crc = new CRC32();
+			crc.update(pending.array(), start + 8, length);
+			pending.putInt(start + 4, (int) crc.getValue());
+			seq = ++appended;
+			if(changed){
+				undo.addLast(new Undo<E>(seq, op, key, value));
+			}
+			full = pending.position() >= BUFFER;
+		}
+		finally{
+			logLock.unlock();
+		}
+		if(full && durability == Durability.PER_BATCH){
+			// bound the buffer between batches; this writer still holds the
+			// write lock, but the leader never needs it. A failure is left
+			// for the batch's own commit to report, so every pair of the
+			// batch still gets its undo
+			try{
+				sync(seq);
+			}
+			catch(IOException e){
+			}
+		}
+		return seq;
+	}
+
+	/*
+	 * Refuses a change once the log has failed, as it could never reach the
+	 * disk
+	 */
+
+	private void checkLog(){
+		if(failure != null){
+			rollBack();
+			throw new UncheckedIOException(new IOException("Log has failed", failure));
+		}
+	}
+
+	/*
+	 * Undoes the changes that never reached the disk, if the log has failed
+	 * and they have not been undone yet
+	 */
+
+	private void recover(){
+		if(failure != null && !rolledBack){
+			lock.writeLock().lock();
+			try{
+				rollBack();
+			}
+			finally{
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	/*
+	 * Undoes, newest first, every change whose record is past the last one
+	 * known to be on disk. Called with the write lock held once the log has
+	 * failed, when durable can no longer move
+	 */
+
+	private void rollBack(){
+		if(rolledBack){
+			return;
+		}
+		long kept;
+		syncLock.lock();
+		try{
+			kept = durable;
+		}
+		finally{
+			syncLock.unlock();
+		}
+		logLock.lock();
+		try{
+			for(Iterator<Undo<E>> i = undo.descendingIterator(); i.hasNext();){
+				Undo<E> u = i.next();
+				if(u.seq <= kept){
+					break;
+				}
+				if(u.op == PUT && table.hasKey(u.key)){
+					table.remove(u.key);
+				}
+				else if(u.op == REMOVE && !table.hasKey(u.key)){
+					table.put(u.key, u.value);
+				}
+			}
+			undo.clear();
+		}
+		finally{
+			logLock.unlock();
+		}
+		rolledBack = true;
+	}
+
+	/*
+	 * Waits for record seq to reach the disk if the table's durability is at
+	 * least as strict as the given one
+	 */
+
+	private void committed(long seq, Durability needed){
+		if(durability == Durability.PERIODIC || (durability == Durability.PER_BATCH && needed == Durability.PER_OP)){
+			return;
+		}
+		try{
+			sync(seq);
+		}
+		catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/*
+	 * Returns once record seq is on disk. If no one is writing the log, this
+	 * thread becomes the leader and writes and forces every record appended
+	 * so far, then wakes the writers waiting on any of them; otherwise it
+	 * waits for the current leader and checks again. If the leader fails,
+	 * the records it took are lost, so the log is marked failed and this and
+	 * every waiting writer get the error
+	 */
+
+	private void sync(long seq) throws IOException{
+		syncLock.lock();
+		try{
+			while(durable < seq){
+				if(failure != null){
+					throw new IOException("Log has failed", failure);
+				}
+				if(syncing){
+					synced.awaitUninterruptibly();
+					continue;
+				}
+				syncing = true;
+				syncLock.unlock();
+				long upto = 0;
+				boolean written = false;
+				try{
+					ByteBuffer out;
+					logLock.lock();
+					try{
+						out = pending;
+						pending = spare;
+						spare = out;
+						upto = appended;
+					}
+					finally{
+						logLock.unlock();
+					}
+					out.flip();
+					while(out.hasRemaining()){
+						log.write(out);
+					}
+					out.clear();
+					log.force(false);
+					written = true;
+					logLock.lock();
+					try{
+						while(!undo.isEmpty() && undo.peekFirst().seq <= upto){
+							undo.pollFirst();
+						}
+					}
+					finally{
+						logLock.unlock();
+					}
+				}
+				catch(IOException e){
+					failure = e;
+					throw e;
+				}
+				finally{
+					syncLock.lock();
+					syncing = false;
+					if(written){
+						durable = Math.max(durable, upto);
+						syncs++;
+					}
+					else if(failure == null){
+						failure = new IOException("Log write did not complete");
+					}
+					synced.signalAll();
+				}
+			}
+		}
+		finally{
+			syncLock.unlock();
+		}
+	}
+
+	/*
+	 * Waits until no leader is writing and keeps other threads from leading
+	 * until follow is called
+	 */
+
+	private void lead(){
+		syncLock.lock();
+		try{
+			while(syncing){
+				synced.awaitUninterruptibly();
+			}
+			syncing = true;
+		}
+		finally{
+			syncLock.unlock();
+		}
+	}
+
+	private void follow(){
+		syncLock.lock();
+		try{
+			syncing = false;
+			synced.signalAll();
+		}
+		finally{
+			syncLock.unlock();
+		}
+	}
+
+	/*
+	 * Applies every intact record in the log to the table and returns the
+	 * length of the intact part. Puts of keys that exist and removes of keys
+	 * that do not are skipped, which makes replaying a log over a snapshot
+	 * that already contains its changes harmless
+	 */
+
+	private long replay(File logFile) throws IOException{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile), BUFFER));
+		long valid = 0;
+		long fileLength = logFile.length();
+		CRC32 crc = new CRC32();
+		try{
+			while(true){
+				int length;
+				int sum;
+				byte[] body;
+				try{
+					length = in.readInt();
+					sum = in.readInt();
+					if(length < 5 || length > fileLength - valid - 8){
+						break;
+					}
+					body = new byte[length];
+					in.readFully(body);
+				}
+				catch(EOFException e){
+					break;
+				}
+				crc.reset();
+				crc.update(body, 0, length);
+				if((int) crc.getValue() != sum){
+					break;
+				}
+				ByteBuffer record = ByteBuffer.wrap(body);
+				byte op = record.get();
+				int keyLength = record.getInt();
+				if(keyLength < 0 || keyLength > (length - 5) / 2){
+					break;
+				}
+				char[] chars = new char[keyLength];
+				for(int i = 0; i < keyLength; i++){
+					chars[i] = record.getChar();
+				}
+				String key = new String(chars);
+				if(op == PUT && !table.hasKey(key)){
+					table.put(key, codec.read(record, 5 + 2 * keyLength, length - 5 - 2 * keyLength));
+				}
+				else if(op == REMOVE && table.hasKey(key)){
+					table.remove(key);
+				}
+				valid += 8 + length;
+			}
+		}
+		finally{
+			in.close();
+		}
+		return valid;
+	}
+
+	/*
+	 * Testing
+	 */
+
+	public static void main(String[] args) throws IOException{
+		String path = args.length > 0 ? args[0] : "durable-test";
+		DurableHashTable<Integer> t = new DurableHashTable<Integer>(path, ValueCodec.INTEGER, Durability.PER_BATCH);
+		String[] keys = new String[1000];
+		Integer[] values = new Integer[1000];
+		for(int i = 0; i < keys.length; i++){
+			keys[i] = "key" + i;
+			values[i] = i;
+		}
+		t.putAll(keys, values);
+		t.remove("key7");
+		t.sync();
+		System.out.println(t.size() + " " + t.get("key500") + " " + t.hasKey("key7"));
+		t.close();
+
+		t = new DurableHashTable<Integer>(path, ValueCodec.INTEGER, Durability.PER_BATCH);
+		System.out.println(t.size() + " " + t.get("key500") + " " + t.hasKey("key7"));
+		t.compact();
+		t.close();
+	}
+
+}
@@ -0,0 +1,15 @@
+/**
+ * HashFunction.java
+ */
+
+/*
+ * A strategy for turning a String key into a 32-bit hash code. Implementations
+ * only use integer arithmetic and may return any int, including negative ones;
+ * it is up to the table to reduce the code to a bucket index.
+ */
+
+public interface HashFunction{
+
+    public abstract int hash(String s);
+
+}
@@ -1,3 +1,13 @@
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Jacob Gold
@@ -14,21 +24,284 @@
  * When multiple keys end up being put into the same slot in the array, they are
  * stored in a binary search tree, so the search time becomes log(n) assuming
  * multiple key-value pairs are in a single index
+ * 
+ * Most buckets hold no more than a couple of pairs, though, so an empty bucket
+ * is just null and a bucket starts out as a SmallBucket, a short sorted array
+ * that is scanned from the front. It is replaced by a BinarySearchTree once it
+ * holds more than TREE_THRESHOLD pairs, and turned back into a SmallBucket
+ * when it falls to half of that.
+ * 
+ * The table grows once the number of pairs exceeds the load factor times the
+ * number of buckets (and can optionally shrink again when it empties out).
+ * Rehashing can either move every pair at once, or incrementally: the old
+ * array is kept alongside the new one and a bounded number of its buckets are
+ * migrated on every put or remove, so no single call pays for the whole move.
+ * 
+ * Keys are hashed by a pluggable HashFunction (MurmurHash unless another is
+ * given). When the number of buckets is a power of two the hash is masked
+ * down to an index and the table keeps doubling; otherwise it is reduced
+ * modulo the (prime) number of buckets.
  */
 
-public class HashTable<E extends Comparable>{
+public class HashTable<E extends Comparable> implements TableInterface<E>{
+	
+	private static final double DEFAULT_LOAD_FACTOR = 0.75;
+	private static final int PARALLEL_THRESHOLD = 4096;
+	private static final int TREE_THRESHOLD = 8;
+	private static final HashFunction POWER = new PowerHash();
+	private static final HashFunction BASE59 = new Base59Hash();
+	
+	/*
+	 * Sums longTreeSum (or leafCount, or applies doubles) over a range of
+	 * buckets, splitting the range in half until it covers no more than
+	 * PARALLEL_THRESHOLD pairs or a single bucket
+	 */
 	
-	private BinarySearchTree[] table;
+	@SuppressWarnings("serial")
+	private class BucketTask extends RecursiveTask<Long>{
+		private int from;
+		private int to;
+		private int pairs;
+		private boolean leaves;
+		private boolean doubles;
+		
+		private BucketTask(int from, int to, int pairs, boolean leaves, boolean doubles){
+			this.from = from;
+			this.to = to;
+			this.pairs = pairs;
+			this.leaves = leaves;
+			this.doubles = doubles;
+		}
+		
+		protected Long compute(){
+			if(pairs <= PARALLEL_THRESHOLD || to - from == 1){
+				long result = 0;
+				for(int i = from; i < to; i++){
+					Bucket<E> t = table[i];
+					if(t == null){
+						continue;
+					}
+					if(doubles){
+						t.doubles();
+					}
+					else if(leaves){
+						result += t.leafCount();
+					}
+					else{
+						result += t.longTreeSum();
+					}
+				}
+				return result;
+			}
+			int mid = (from + to) >>> 1;
+			BucketTask left = new BucketTask(from, mid, pairs / 2, leaves, doubles);
+			left.fork();
+			long r = new BucketTask(mid, to, pairs - pairs / 2, leaves, doubles).compute();
+			return left.join() + r;
+		}
+	}
 	
 	/*
-	 * Constructs a hash table of a given size
+	 * Splits the table into ranges of buckets for a stream. A bucket's pairs
+	 * are copied out one bucket at a time when the stream advances pair by
+	 * pair, and are not copied at all when it takes the rest in bulk
+	 */
+	
+	private class EntrySpliterator implements Spliterator<Map.Entry<String, E>>{
+		private int index;
+		private int fence;
+		private long estimate;
+		private String[] keys = new String[0];
+		private Object[] values = new Object[0];
+		private int position;
+		private int loaded;
+		
+		private EntrySpliterator(int index, int fence, long estimate){
+			this.index = index;
+			this.fence = fence;
+			this.estimate = estimate;
+		}
+		
+		@SuppressWarnings("unchecked")
+		public boolean tryAdvance(Consumer<? super Map.Entry<String, E>> action){
+			while(position == loaded){
+				if(index >= fence){
+					return false;
+				}
+				Bucket<E> t = table[index++];
+				if(t != null){
+					if(keys.length < t.size()){
+						keys = new String[t.size()];
+						values = new Object[t.size()];
+					}
+					loaded = t.page(null, keys, values, 0);
+					position = 0;
+				}
+			}
+			action.accept(new AbstractMap.SimpleImmutableEntry<String, E>(keys[position], (E) values[position]));
+			keys[position] = null;
+			values[position] = null;
+			position++;
+			return true;
+		}
+		
+		public void forEachRemaining(Consumer<? super Map.Entry<String, E>> action){
+			while(position < loaded){
+				tryAdvance(action);
+			}
+			for(; index < fence; index++){
+				Bucket<E> t = table[index];
+				if(t != null){
+					t.forEach((key, value) -> action.accept(new AbstractMap.SimpleImmutableEntry<String, E>(key, value)));
+				}
+			}
+		}
+		
+		/*
+		 * Hands the first half of the remaining buckets to a new spliterator
+		 */
+		
+		public Spliterator<Map.Entry<String, E>> trySplit(){
+			int mid = (index + fence) >>> 1;
+			if(mid <= index){
+				return null;
+			}
+			EntrySpliterator prefix = new EntrySpliterator(index, mid, estimate / 2);
+			index = mid;
+			estimate -= estimate / 2;
+			return prefix;
+		}
+		
+		public long estimateSize(){
+			return estimate;
+		}
+		
+		public int characteristics(){
+			return DISTINCT | NONNULL;
+		}
+	}
+	
+	/*
+	 * Pages through the table a chunk at a time, in bucket order and key
+	 * order within a bucket. The position is just a bucket and the last key
+	 * returned from it, so a cursor can be recreated from bucket() and
+	 * lastKey() later on. Pairs put or removed between chunks may or may not
+	 * be seen, and if the table is resized between chunks, resuming may skip
+	 * or repeat pairs
+	 */
+	
+	public class Cursor{
+		private int bucket;
+		private String last;
+		
+		private Cursor(int bucket, String last){
+			this.bucket = bucket;
+			this.last = last;
+		}
+		
+		/*
+		 * Fills keys and values with the next pairs and returns how many it
+		 * found, which is less than keys.length only at the end of the table
+		 */
+		
+		public int next(String[] keys, E[] values){
+			finishRehash();
+			int n = 0;
+			while(n < keys.length && bucket < table.length){
+				Bucket<E> t = table[bucket];
+				int m = t == null ? n : t.page(last, keys, values, n);
+				if(m < keys.length){
+					bucket++;
+					last = null;
+				}
+				else{
+					last = keys[m - 1];
+				}
+				n = m;
+			}
+			return n;
+		}
+		
+		public boolean hasNext(){
+			return bucket < table.length;
+		}
+		
+		public int bucket(){
+			return bucket;
+		}
+		
+		public String lastKey(){
+			return last;
+		}
+	}
+	
+	private Bucket<E>[] table;
+	private Bucket<E>[] oldTable;
+	private int rehashIndex;
+	private int count;
+	private int minSize;
+	private double loadFactor;
+	private boolean shrink;
+	private int rehashStep;
+	private HashFunction hashFunction;
+	private TableMetrics metrics;
+	
+	/*
+	 * Marks an old bucket that has already been migrated, since null in the
+	 * old array means an empty bucket that has not
+	 */
+	
+	private final Bucket<E> migrated = new SmallBucket<E>();
+	
+	/*
+	 * Constructs a hash table of a given size which grows once it is three
+	 * quarters full
 	 */
 	
 	public HashTable(int size){
-		table = new BinarySearchTree[size];
-		for(int i = 0; i < table.length; i++){
-			table[i] = new BinarySearchTree();
+		this(size, DEFAULT_LOAD_FACTOR);
+	}
+	
+	/*
+	 * Constructs a hash table of a given size which grows once the number of
+	 * pairs exceeds loadFactor times the number of buckets, rehashing all at once
+	 */
+	
+	public HashTable(int size, double loadFactor){
+		this(size, loadFactor, false, 0);
+	}
+	
+	/*
+	 * Constructs a hash table of a given size which hashes keys with the
+	 * given function
+	 */
+	
+	public HashTable(int size, HashFunction hashFunction){
+		this(size, DEFAULT_LOAD_FACTOR, false, 0, hashFunction);
+	}
+	
+	/*
+	 * Constructs a hash table of a given size and load factor. If shrink is
+	 * true the table also shrinks (never below its initial size) when it falls
+	 * under a quarter of the load factor. A rehashStep of 0 rehashes all at
+	 * once; otherwise at most that many old buckets are migrated per put or
+	 * remove while a rehash is in progress
+	 */
+	
+	public HashTable(int size, double loadFactor, boolean shrink, int rehashStep){
+		this(size, loadFactor, shrink, rehashStep, new MurmurHash());
+	}
+	
+	public HashTable(int size, double loadFactor, boolean shrink, int rehashStep, HashFunction hashFunction){
+		if(size < 1 || !(loadFactor > 0) || rehashStep < 0 || hashFunction == null){
+			throw new IllegalArgumentException();
 		}
+		this.minSize = size;
+		this.loadFactor = loadFactor;
+		this.shrink = shrink;
+		this.rehashStep = rehashStep;
+		this.hashFunction = hashFunction;
+		table = newTable(size);
 	}
 	
 	/*
@@ -39,15 +312,13 @@ public class HashTable<E extends Comparable>{
 	 * 
 	 * NOTE: after testing what seemed logically to be a successful hash function,
 	 * I came to the conclusion that it does generate many collisions when similar
-	 * Strings are used.
+	 * Strings are used, which is why the table itself now hashes through a
+	 * HashFunction. The powers are computed with integer arithmetic and are
+	 * allowed to overflow; the result is always a valid index.
 	 */
 	
 	public int hash(String s){
-		int x = 0;
-		for(int i = 0; i < s.length(); i++){
-			x += Math.pow(s.charAt(i), i + 1);
-		}
-		return x % table.length;
+		return Math.floorMod(POWER.hash(s), table.length);
 	}
 	
 	/*
@@ -62,14 +333,55 @@ public class HashTable<E extends Comparable>{
 	 * Theoretically, this function could work for any characters, but the number of
 	 * possible characters is 65,536, and raising that to any power greater than 2 
 	 * would quickly create a number too large to deal with
+	 * 
+	 * The sum is evaluated with Horner's rule from the last character, so it
+	 * takes one integer multiply per character and simply overflows on long
+	 * Strings instead of saturating; the result is always a valid index.
 	 */
 	
 	public int hash2(String s){
-		int x = 0;
-		for(int i = 0; i < s.length(); i++){
-			x += (s.charAt(i) - 64) * Math.pow(59, i);
+		return Math.floorMod(BASE59.hash(s), table.length);
+	}
+	
+	/*
+	 * Returns the buckets, after finishing any rehash in progress, for code
+	 * that reads the whole table bucket by bucket (such as Snapshot)
+	 */
+	
+	Bucket<E>[] buckets(){
+		finishRehash();
+		return table;
+	}
+	
+	/*
+	 * Returns the bucket a key belongs in once any rehash has finished
+	 */
+	
+	int bucketIndex(String key){
+		return index(key, table.length);
+	}
+	
+	/*
+	 * Adds the pairs keys[from, to) (as from Snapshot) to bucket i, which
+	 * they must all belong in, keeping the pairs it already holds
+	 */
+	
+	void insertBucket(int i, String[] keys, E[] values, int from, int to){
+		finishRehash();
+		insertAll(i, keys, values, from, to);
+	}
+	
+	/*
+	 * Reduces the hash of a key to an index in an array of the given length,
+	 * masking when the length is a power of two
+	 */
+	
+	private int index(String key, int length){
+		int h = hashFunction.hash(key);
+		if((length & (length - 1)) == 0){
+			return h & (length - 1);
 		}
-		return x % table.length;
+		return (h & 0x7fffffff) % length;
 	}
 	
 	/*
@@ -77,9 +389,277 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public void put(String key, E value){
-		int hash = hash2(key);
-		table[hash].insert(key, value);
-		table[hash].balance();
+		long start = metrics == null ? 0 : System.nanoTime();
+		rehashSteps();
+		int i = writeIndex(key);
+		Bucket<E> t = table[i];
+		if(t == null){
+			t = table[i] = new SmallBucket<E>();
+		}
+		int before = t.size();
+		long rotations = t.rotations();
+		t.insert(key, value);
+		count += t.size() - before;
+		fit(table, i);
+		// read after fit, which may have turned the bucket into a tree; only
+		// a tree has a height to speak of, a SmallBucket is scanned
+		int height = table[i] instanceof BinarySearchTree ? table[i].height() : -1;
+		if(oldTable == null && count > loadFactor * table.length){
+			resize(grownSize(table.length));
+		}
+		if(metrics != null){
+			metrics.recordPut(t.rotations() - rotations, height, System.nanoTime() - start);
+		}
+	}
+	
+	/*
+	 * Inserts a batch of key-value pairs. The table is grown once up front to
+	 * fit the whole batch, the pairs are grouped by bucket, and each bucket's
+	 * tree is then built (or rebuilt) in a single pass instead of one insert
+	 * at a time. Keys already present, or repeated in the batch, keep their
+	 * first value
+	 */
+	
+	public void putAll(String[] keys, E[] values){
+		long start = metrics == null ? 0 : System.nanoTime();
+		finishRehash();
+		int size = table.length;
+		while(count + keys.length > loadFactor * size){
+			size = grownSize(size);
+		}
+		if(size != table.length){
+			resize(size);
+			finishRehash();
+		}
+		int[] bucket = new int[keys.length];
+		int[] order = group(keys, bucket);
+		String[] k = new String[keys.length];
+		E[] v = newValues(keys.length);
+		for(int p = 0; p < keys.length; p++){
+			k[p] = keys[order[p]];
+			v[p] = values[order[p]];
+		}
+		long rotations = 0;
+		for(int p = 0, q; p < keys.length; p = q){
+			q = end(bucket, p);
+			rotations += insertAll(bucket[p], k, v, p, q);
+		}
+		if(metrics != null){
+			metrics.recordPuts(keys.length, rotations, System.nanoTime() - start);
+		}
+	}
+	
+	/*
+	 * Looks up a batch of keys, putting the value for keys[i] (or null if it
+	 * is not in the table) in results[i], and returns the number found. Each
+	 * key is hashed once, the keys are grouped by bucket and sorted, and
+	 * each bucket resolves its keys in a single ordered pass, so a bucket
+	 * tree is descended from the root once per batch instead of once per
+	 * key. A batch too small to put more than one key in most buckets is
+	 * looked up key by key, since grouping it would cost more than it saves.
+	 * results can be reused from one batch to the next. With metrics, the
+	 * batch is recorded as one timed sample either way
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public int getAll(String[] keys, E[] results){
+		long start = metrics == null ? 0 : System.nanoTime();
+		if(oldTable != null || keys.length < table.length / 4){
+			int found = 0;
+			for(int i = 0; i < keys.length; i++){
+				Bucket<E> t = readBucket(keys[i]);
+				results[i] = t == null ? null : t.search(keys[i]);
+				if(results[i] != null){
+					found++;
+				}
+			}
+			if(metrics != null){
+				metrics.recordGets(keys.length, found, System.nanoTime() - start);
+			}
+			return found;
+		}
+		int[] bucket = new int[keys.length];
+		int[] order = group(keys, bucket);
+		String[] k = sorted(keys, order, bucket);
+		Object[] v = new Object[keys.length];
+		for(int p = 0, q; p < keys.length; p = q){
+			q = end(bucket, p);
+			if(table[bucket[p]] != null){
+				table[bucket[p]].searchAll(k, p, q, v);
+			}
+		}
+		int found = 0;
+		for(int p = 0; p < keys.length; p++){
+			results[order[p]] = (E) v[p];
+			if(v[p] != null){
+				found++;
+			}
+		}
+		if(metrics != null){
+			metrics.recordGets(keys.length, found, System.nanoTime() - start);
+		}
+		return found;
+	}
+	
+	/*
+	 * Removes a batch of keys, grouped by bucket and sorted like getAll, and
+	 * returns the number removed; keys that are not in the table are ignored.
+	 * A bucket tree losing a large share of its pairs is rebuilt from the
+	 * ones that remain instead of rebalancing after every removal
+	 */
+	
+	public int removeAll(String[] keys){
+		long start = metrics == null ? 0 : System.nanoTime();
+		finishRehash();
+		int[] bucket = new int[keys.length];
+		int[] order = group(keys, bucket);
+		String[] k = sorted(keys, order, bucket);
+		int removed = 0;
+		long rotations = 0;
+		for(int p = 0, q; p < keys.length; p = q){
+			q = end(bucket, p);
+			Bucket<E> t = table[bucket[p]];
+			if(t != null){
+				long before = t.rotations();
+				removed += t.removeAll(k, p, q);
+				rotations += t.rotations() - before;
+				fit(table, bucket[p]);
+			}
+		}
+		count -= removed;
+		if(shrink && table.length > minSize && count < loadFactor * table.length / 4){
+			resize(shrunkSize());
+		}
+		if(metrics != null){
+			metrics.recordRemoves(keys.length, rotations, System.nanoTime() - start);
+		}
+		return removed;
+	}
+	
+	/*
+	 * Arranges a batch of keys by the bucket of the current array they belong
+	 * in: returns the index in keys of the key at each position, and fills
+	 * bucket with the bucket of the key at each position, in ascending order.
+	 * A batch that is large next to the table is counted into place in
+	 * linear time; a smaller one is sorted, so the cost never depends on the
+	 * number of buckets
+	 */
+	
+	private int[] group(String[] keys, int[] bucket){
+		int[] order = new int[keys.length];
+		if(keys.length < table.length / 4){
+			long[] packed = new long[keys.length];
+			for(int i = 0; i < keys.length; i++){
+				packed[i] = (long) index(keys[i], table.length) << 32 | i;
+			}
+			Arrays.sort(packed);
+			for(int p = 0; p < keys.length; p++){
+				bucket[p] = (int) (packed[p] >>> 32);
+				order[p] = (int) packed[p];
+			}
+			return order;
+		}
+		int[] index = new int[keys.length];
+		int[] next = new int[table.length + 1];
+		for(int i = 0; i < keys.length; i++){
+			index[i] = index(keys[i], table.length);
+			next[index[i] + 1]++;
+		}
+		for(int b = 0; b < table.length; b++){
+			next[b + 1] += next[b];
+		}
+		for(int i = 0; i < keys.length; i++){
+			int p = next[index[i]]++;
+			order[p] = i;
+			bucket[p] = index[i];
+		}
+		return order;
+	}
+	
+	/*
+	 * Returns the position after the run of positions from p that share
+	 * p's bucket
+	 */
+	
+	private static int end(int[] bucket, int p){
+		int q = p + 1;
+		while(q < bucket.length && bucket[q] == bucket[p]){
+			q++;
+		}
+		return q;
+	}
+	
+	/*
+	 * Returns the keys in the positions given by group, with each bucket's
+	 * keys sorted (and order permuted to match)
+	 */
+	
+	private static String[] sorted(String[] keys, int[] order, int[] bucket){
+		String[] k = new String[keys.length];
+		for(int p = 0; p < keys.length; p++){
+			k[p] = keys[order[p]];
+		}
+		String[] srcKeys = null;
+		int[] srcOrder = null;
+		for(int p = 0, q; p < keys.length; p = q){
+			q = end(bucket, p);
+			if(q - p > 1){
+				if(srcKeys == null){
+					srcKeys = k.clone();
+					srcOrder = order.clone();
+				}
+				sort(k, order, srcKeys, srcOrder, p, q);
+			}
+		}
+		return k;
+	}
+	
+	/*
+	 * Stably sorts keys[lo, hi) and the matching order by key; srcKeys and
+	 * srcOrder must start out as copies of keys and order
+	 */
+	
+	private static void sort(String[] keys, int[] order, String[] srcKeys, int[] srcOrder, int lo, int hi){
+		if(hi - lo < 2){
+			return;
+		}
+		int mid = (lo + hi) >>> 1;
+		sort(srcKeys, srcOrder, keys, order, lo, mid);
+		sort(srcKeys, srcOrder, keys, order, mid, hi);
+		int a = lo, b = mid;
+		for(int i = lo; i < hi; i++){
+			if(b >= hi || (a < mid && srcKeys[a].compareTo(srcKeys[b]) <= 0)){
+				keys[i] = srcKeys[a];
+				order[i] = srcOrder[a++];
+			}
+			else{
+				keys[i] = srcKeys[b];
+				order[i] = srcOrder[b++];
+			}
+		}
+	}
+	
+	/*
+	 * Inserts keys[from, to) into bucket b. A bucket that would hold more
+	 * pairs than fit in a SmallBucket becomes a tree first, so the batch is
+	 * built into it in one pass. Returns the number of rotations the bucket
+	 * took
+	 */
+	
+	private long insertAll(int b, String[] keys, E[] values, int from, int to){
+		Bucket<E> t = table[b];
+		if(t == null){
+			t = table[b] = to - from > TREE_THRESHOLD ? HashTable.<E>newTree() : new SmallBucket<E>(to - from);
+		}
+		else if(t instanceof SmallBucket && t.size() + to - from > TREE_THRESHOLD){
+			t = table[b] = tree(t);
+		}
+		int before = t.size();
+		long rotations = t.rotations();
+		t.insertAll(keys, values, from, to);
+		count += t.size() - before;
+		fit(table, b);
+		return t.rotations() - rotations;
 	}
 	
 	/*
@@ -88,7 +668,11 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public E get(String key){
-		return (E) table[hash2(key)].search(key);
+		if(metrics != null){
+			return lookup(key);
+		}
+		Bucket<E> t = readBucket(key);
+		return t == null ? null : t.search(key);
 	}
 	
 	/*
@@ -96,7 +680,7 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public boolean hasKey(String key){
-		Comparable temp = table[hash2(key)].search(key);
+		E temp = get(key);
 		if(temp == null){
 			return false;
 		}
@@ -108,9 +692,38 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public void remove(String key){
-		int hash = hash2(key);
-		table[hash].remove(key);
-		table[hash].balance();
+		long start = metrics == null ? 0 : System.nanoTime();
+		rehashSteps();
+		int i = writeIndex(key);
+		Bucket<E> t = table[i];
+		if(t == null){
+			System.err.println("Key does not exist");
+			return;
+		}
+		int before = t.size();
+		long rotations = t.rotations();
+		t.remove(key);
+		count += t.size() - before;
+		fit(table, i);
+		if(shrink && oldTable == null && table.length > minSize && count < loadFactor * table.length / 4){
+			resize(shrunkSize());
+		}
+		if(metrics != null){
+			metrics.recordRemove(t.rotations() - rotations, System.nanoTime() - start);
+		}
+	}
+	
+	/*
+	 * Starts recording the table's operations in the given metrics, or stops
+	 * recording if it is null. Without metrics nothing is measured at all
+	 */
+	
+	public void setMetrics(TableMetrics metrics){
+		this.metrics = metrics;
+	}
+	
+	public TableMetrics getMetrics(){
+		return metrics;
 	}
 	
 	
@@ -119,11 +732,7 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public int size(){
-		int size = 0;
-		for(BinarySearchTree t: table){
-			size += t.size();
-		}
-		return size;
+		return count;
 	}
 	
 	/*
@@ -132,37 +741,365 @@ public class HashTable<E extends Comparable>{
 	 */
 	
 	public int[] distribution(){
+		finishRehash();
 		int[] dist = new int[table.length];
 		for(int i = 0; i < table.length; i++){
-			dist[i] = table[i].size();
+			dist[i] = table[i] == null ? 0 : table[i].size();
 		}
 		return dist;
 	}
 	
+	/*
+	 * Returns the sum of every value in the table, assuming the values are
+	 * integers, adding up the buckets' sums in parallel in the given pool.
+	 * Each bucket is summed as a long, so neither a bucket's sum nor the
+	 * total wraps
+	 */
+	
+	public long parallelTreeSum(ForkJoinPool pool){
+		finishRehash();
+		return pool.invoke(new BucketTask(0, table.length, count, false, false));
+	}
+	
+	/*
+	 * Returns the total number of leaves in all of the buckets' trees,
+	 * counted in parallel in the given pool
+	 */
+	
+	public long parallelLeafCount(ForkJoinPool pool){
+		finishRehash();
+		return pool.invoke(new BucketTask(0, table.length, count, true, false));
+	}
+	
+	/*
+	 * Doubles every value in the table, assuming the values are integers,
+	 * working on the buckets in parallel in the given pool
+	 */
+	
+	public void parallelDoubles(ForkJoinPool pool){
+		finishRehash();
+		pool.invoke(new BucketTask(0, table.length, count, false, true));
+	}
+	
 	/*
 	 * Returns an array of Strings containing all of the keys present
 	 * in the table
 	 */
 	
 	public String[] keys(){
-		String[] keys = new String[size()];
+		String[] keys = new String[count];
 		int i = 0;
-		for(int j = 0; j < table.length; j++){
-			String[] sub = table[j].keys();
-			for(int k = 0; k < table[j].size(); k++){
-				keys[i] = sub[k];
-				i++;
+		if(oldTable != null){
+			for(Bucket<E> t: oldTable){
+				if(t != null && !t.isEmpty()){
+					String[] sub = t.keys();
+					System.arraycopy(sub, 0, keys, i, sub.length);
+					i += sub.length;
+				}
+			}
+		}
+		for(Bucket<E> t: table){
+			if(t != null){
+				String[] sub = t.keys();
+				System.arraycopy(sub, 0, keys, i, sub.length);
+				i += sub.length;
 			}
 		}
 		return keys;
 	}
 	
+	/*
+	 * Looks a key up while recording the lookup in the metrics. The counting
+	 * search is package-private on each kind of bucket rather than part of
+	 * Bucket, so it is picked by the bucket's class
+	 */
+	
+	private E lookup(String key){
+		long start = System.nanoTime();
+		Bucket<E> t = readBucket(key);
+		E value = null;
+		if(t == null){
+			metrics.recordComparisons(0);
+		}
+		else if(t instanceof SmallBucket){
+			value = ((SmallBucket<E>) t).search(key, metrics);
+		}
+		else{
+			@SuppressWarnings("unchecked")
+			E found = (E) ((BinarySearchTree<?>) t).search(key, metrics);
+			value = found;
+		}
+		metrics.recordGet(value != null, System.nanoTime() - start);
+		return value;
+	}
+	
+	/*
+	 * Passes every pair to an action, without copying the keys or values
+	 * anywhere. The table must not be changed until it returns
+	 */
+	
+	public void forEach(BiConsumer<? super String, ? super E> action){
+		if(oldTable != null){
+			for(Bucket<E> t: oldTable){
+				if(t != null){
+					t.forEach(action);
+				}
+			}
+		}
+		for(Bucket<E> t: table){
+			if(t != null){
+				t.forEach(action);
+			}
+		}
+	}
+	
+	/*
+	 * Returns a stream of the pairs, which a parallel stream splits into
+	 * ranges of buckets. The table must not be changed while the stream is
+	 * in use
+	 */
+	
+	public Stream<Map.Entry<String, E>> stream(){
+		finishRehash();
+		return StreamSupport.stream(new EntrySpliterator(0, table.length, count), false);
+	}
+	
+	/*
+	 * Returns a cursor at the start of the table
+	 */
+	
+	public Cursor cursor(){
+		return new Cursor(0, null);
+	}
+	
+	/*
+	 * Returns a cursor that resumes where one with the given bucket() and
+	 * lastKey() left off
+	 */
+	
+	public Cursor cursor(int bucket, String lastKey){
+		return new Cursor(bucket, lastKey);
+	}
+	
+	/*
+	 * Returns the bucket a key lives in for reading (null if it is empty):
+	 * its bucket in the old array if that one has not been migrated yet,
+	 * otherwise its bucket in the current array
+	 */
+	
+	private Bucket<E> readBucket(String key){
+		if(oldTable != null){
+			Bucket<E> t = oldTable[index(key, oldTable.length)];
+			if(t != migrated){
+				return t;
+			}
+		}
+		return table[index(key, table.length)];
+	}
+	
+	/*
+	 * Returns the index of the bucket a key should be written to, first
+	 * migrating its old bucket if a rehash is in progress so the key is
+	 * never in both arrays
+	 */
+	
+	private int writeIndex(String key){
+		if(oldTable != null){
+			migrate(index(key, oldTable.length));
+		}
+		return index(key, table.length);
+	}
+	
+	/*
+	 * Swaps bucket i of the given array for the representation that suits
+	 * its size: null when empty, a tree past TREE_THRESHOLD pairs, and a
+	 * SmallBucket again at half of that
+	 */
+	
+	private void fit(Bucket<E>[] buckets, int i){
+		Bucket<E> t = buckets[i];
+		int n = t.size();
+		if(n == 0){
+			buckets[i] = null;
+		}
+		else if(n > TREE_THRESHOLD && t instanceof SmallBucket){
+			buckets[i] = tree(t);
+		}
+		else if(n <= TREE_THRESHOLD / 2 && t instanceof BinarySearchTree){
+			SmallBucket<E> small = new SmallBucket<E>(n);
+			t.forEach((key, value) -> small.insert(key, value));
+			buckets[i] = small;
+		}
+	}
+	
+	/*
+	 * Starts moving every pair into a new array of the given size, and
+	 * finishes immediately unless the table rehashes incrementally
+	 */
+	
+	private void resize(int size){
+		finishRehash();
+		oldTable = table;
+		table = newTable(size);
+		rehashIndex = 0;
+		if(rehashStep == 0){
+			finishRehash();
+		}
+	}
+	
+	/*
+	 * Migrates up to rehashStep non-empty old buckets, looking at no more
+	 * than ten times that many slots so runs of empty buckets stay cheap
+	 */
+	
+	private void rehashSteps(){
+		if(oldTable == null){
+			return;
+		}
+		int moved = 0;
+		int visited = 0;
+		while(moved < rehashStep && visited < rehashStep * 10 && rehashIndex < oldTable.length){
+			Bucket<E> t = oldTable[rehashIndex];
+			if(t != null && t != migrated){
+				moved++;
+			}
+			migrate(rehashIndex);
+			rehashIndex++;
+			visited++;
+		}
+		if(rehashIndex == oldTable.length){
+			oldTable = null;
+		}
+	}
+	
+	/*
+	 * Migrates every remaining old bucket
+	 */
+	
+	private void finishRehash(){
+		if(oldTable == null){
+			return;
+		}
+		for(; rehashIndex < oldTable.length; rehashIndex++){
+			migrate(rehashIndex);
+		}
+		oldTable = null;
+	}
+	
+	/*
+	 * Moves the pairs in old bucket i into the current array and marks the
+	 * bucket as migrated
+	 */
+	
+	private void migrate(int i){
+		Bucket<E> t = oldTable[i];
+		oldTable[i] = migrated;
+		if(t == null || t == migrated){
+			return;
+		}
+		t.forEach((key, value) -> {
+			int b = index(key, table.length);
+			if(table[b] == null){
+				table[b] = new SmallBucket<E>();
+			}
+			table[b].insert(key, value);
+			fit(table, b);
+		});
+	}
+	
+	/*
+	 * Returns a tree holding the same pairs as a bucket, built in one pass
+	 * since the bucket hands them over in order
+	 */
+	
+	private Bucket<E> tree(Bucket<E> t){
+		int n = t.size();
+		String[] keys = new String[n];
+		E[] values = newValues(n);
+		int[] j = new int[1];
+		t.forEach((key, value) -> {
+			keys[j[0]] = key;
+			values[j[0]++] = value;
+		});
+		Bucket<E> tree = newTree();
+		tree.insertAll(keys, values, 0, n);
+		return tree;
+	}
+	
+	/*
+	 * Returns an empty tree bucket. The values here are only bounded by the
+	 * raw Comparable, which does not satisfy BinarySearchTree's own bound, so
+	 * the tree is created raw in this one place
+	 */
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static <E> Bucket<E> newTree(){
+		return new BinarySearchTree();
+	}
+	
+	/*
+	 * Returns an array for values; E is at least Comparable, so this is what
+	 * a BinarySearchTree's insertAll expects at run time
+	 */
+	
+	@SuppressWarnings("unchecked")
+	private E[] newValues(int n){
+		return (E[]) new Comparable<?>[n];
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Bucket<E>[] newTable(int size){
+		return (Bucket<E>[]) new Bucket<?>[size];
+	}
+	
+	/*
+	 * Returns the number of buckets to grow to: double a power of two,
+	 * otherwise the next prime after double
+	 */
+	
+	private int grownSize(int length){
+		if((length & (length - 1)) == 0){
+			return length * 2;
+		}
+		return nextPrime(length * 2 + 1);
+	}
+	
+	/*
+	 * Returns the number of buckets to shrink to, never less than the
+	 * initial size
+	 */
+	
+	private int shrunkSize(){
+		if((table.length & (table.length - 1)) == 0){
+			return Math.max(minSize, table.length / 2);
+		}
+		return Math.max(minSize, nextPrime(table.length / 2));
+	}
+	
+	/*
+	 * Returns the smallest prime at least n
+	 */
+	
+	private static int nextPrime(int n){
+		for(;; n++){
+			boolean prime = n > 1;
+			for(int d = 2; prime && (long) d * d <= n; d++){
+				if(n % d == 0){
+					prime = false;
+				}
+			}
+			if(prime){
+				return n;
+			}
+		}
+	}
+	
 	/*
 	 * Testing main
 	 */
 	
 	public static void main(String[] args){
-		HashTable h = new HashTable(19);
+		HashTable<Integer> h = new HashTable<Integer>(19);
 		String[] strings = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
 		for(int i = 0; i < strings.length; i++){
 			h.put(strings[i], i);
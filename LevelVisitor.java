@@ -0,0 +1,24 @@
+/**
+ * LevelVisitor.java
+ */
+
+/*
+ * Receives the pairs of a tree one level at a time, from the root down and
+ * from left to right within a level, as BinarySearchTree.levelOrder walks it
+ */
+
+public interface LevelVisitor<E>{
+
+    /**
+     * Called for every node, with its depth (the root is at level 0)
+     */
+    public abstract void visit(String key, E value, int level);
+
+    /**
+     * Called after the last node of each level, with the number of nodes on
+     * that level; does nothing unless overridden
+     */
+    public default void endLevel(int level, int count){
+    }
+
+}
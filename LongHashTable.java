@@ -0,0 +1,149 @@
+import java.util.function.LongBinaryOperator;
+
+/**
+ * LongHashTable.java
+ */
+
+/*
+ * A hash table from String keys to primitive long values, meant for counters.
+ * The keys are kept by ProbingHashTable, as in OpenHashTable (keys
+ * and cached hashes in parallel arrays, linear probing, backward-shift
+ * removal); the values sit alongside them in a long[], so no value is ever
+ * boxed and an entry costs no object beyond its key.
+ * 
+ * As in the other tables, put leaves the value of a key that is already
+ * present unchanged; addTo, increment and merge are the ways to update one.
+ */
+
+public class LongHashTable extends ProbingHashTable{
+	
+	private long[] values;
+	
+	/*
+	 * Constructs a table with room for at least the given number of slots
+	 */
+	
+	public LongHashTable(int size){
+		this(size, DEFAULT_LOAD_FACTOR, new MurmurHash());
+	}
+	
+	/*
+	 * Constructs a table with room for at least the given number of slots,
+	 * which doubles once the number of pairs exceeds loadFactor times the
+	 * number of slots; loadFactor must be below 1
+	 */
+	
+	public LongHashTable(int size, double loadFactor, HashFunction hashFunction){
+		super(size, loadFactor, hashFunction);
+		values = new long[capacity()];
+	}
+	
+	/*
+	 * Inserts a given key-value pair if the key is not already present
+	 */
+	
+	public void put(String key, long value){
+		int i = slot(key);
+		if(i >= 0){
+			System.err.println("Key already exists");
+			return;
+		}
+		i = add(key, -i - 1);
+		values[i] = value;
+	}
+	
+	/*
+	 * Returns the value associated with a given key, or 0 if the key is
+	 * not present
+	 */
+	
+	public long get(String key){
+		return getOrDefault(key, 0);
+	}
+	
+	/*
+	 * Returns the value associated with a given key, or defaultValue if the
+	 * key is not present
+	 */
+	
+	public long getOrDefault(String key, long defaultValue){
+		int i = slot(key);
+		if(i < 0){
+			return defaultValue;
+		}
+		return values[i];
+	}
+	
+	/*
+	 * Adds one to the value of a given key (starting from 0 if it is not
+	 * present) and returns the new value
+	 */
+	
+	public long increment(String key){
+		return addTo(key, 1);
+	}
+	
+	/*
+	 * Adds delta to the value of a given key (starting from 0 if it is not
+	 * present) and returns the new value
+	 */
+	
+	public long addTo(String key, long delta){
+		int i = slot(key);
+		if(i < 0){
+			i = add(key, -i - 1);
+		}
+		values[i] += delta;
+		return values[i];
+	}
+	
+	/*
+	 * Stores value for a key that is not present, otherwise replaces the
+	 * old value with f(old value, value); returns the value now stored
+	 */
+	
+	public long merge(String key, long value, LongBinaryOperator f){
+		int i = slot(key);
+		if(i < 0){
+			i = add(key, -i - 1);
+			values[i] = value;
+			return value;
+		}
+		values[i] = f.applyAsLong(values[i], value);
+		return values[i];
+	}
+	
+	void moveValue(int from, int to){
+		values[to] = values[from];
+	}
+	
+	void clearValue(int i){
+		values[i] = 0;
+	}
+	
+	void moveValues(int capacity, int[] to){
+		long[] oldValues = values;
+		values = new long[capacity];
+		for(int i = 0; i < to.length; i++){
+			if(to[i] >= 0){
+				values[to[i]] = oldValues[i];
+			}
+		}
+	}
+	
+	/*
+	 * Testing main
+	 */
+	
+	public static void main(String[] args){
+		LongHashTable h = new LongHashTable(16);
+		String[] strings = {"tall", "talk", "tarp", "tall", "team", "talk", "tall"};
+		for(String s: strings){
+			h.increment(s);
+		}
+		for(String s: h.keys()){
+			System.out.println(s + " " + h.get(s));
+		}
+	}
+	
+}
@@ -0,0 +1,375 @@
+/**
+ * LongTree.java
+ */
+
+/*
+ * A balanced binary search tree from String keys to primitive long values,
+ * for the numeric aggregates that BinarySearchTree can only compute by parsing
+ * each value's String form. The values are stored unboxed in the nodes, so
+ * treeSum, maxPathSum, doubles and scale touch no objects other than the nodes
+ * themselves, and the sums are returned as longs so adding up many int-sized
+ * values does not overflow. Int values are stored as longs.
+ * 
+ * Like BinarySearchTree, each node caches its height and subtree size and has
+ * a parent pointer; insert and remove rebalance along the path back to the
+ * root, and every traversal is a loop over parent pointers rather than
+ * recursion.
+ */
+
+public class LongTree{
+	
+	private class Node{
+		private String key;
+		private long value;
+		private Node parent;
+		private Node left;
+		private Node right;
+		private int height;
+		private int size;
+		
+		private Node(String key, long value, Node parent){
+			this.key = key;
+			this.value = value;
+			this.parent = parent;
+			size = 1;
+		}
+	}
+	
+	private Node root;
+	
+	/*
+	 * Inserts a given key-value pair into the tree in the correct position
+	 */
+	
+	public void insert(String key, long value){
+		if(root == null){
+			root = new Node(key, value, null);
+			return;
+		}
+		Node n = root;
+		while(true){
+			int c = key.compareTo(n.key);
+			if(c > 0){
+				if(n.right == null){
+					n.right = new Node(key, value, n);
+					retrace(n);
+					return;
+				}
+				n = n.right;
+			}
+			else if(c < 0){
+				if(n.left == null){
+					n.left = new Node(key, value, n);
+					retrace(n);
+					return;
+				}
+				n = n.left;
+			}
+			else{
+				System.err.println("Key already exists");
+				return;
+			}
+		}
+	}
+	
+	/*
+	 * Returns the value associated with a given key, or defaultValue if the
+	 * key is not in the tree
+	 */
+	
+	public long getOrDefault(String key, long defaultValue){
+		Node n = find(key);
+		if(n == null){
+			return defaultValue;
+		}
+		return n.value;
+	}
+	
+	/*
+	 * Returns true if a given key is in the tree, false otherwise
+	 */
+	
+	public boolean hasKey(String key){
+		return find(key) != null;
+	}
+	
+	/*
+	 * Removes the key-value pair associated with a given key
+	 */
+	
+	public void remove(String key){
+		Node n = find(key);
+		if(n == null){
+			System.err.println("Key does not exist");
+			return;
+		}
+		if(n.left != null && n.right != null){
+			Node s = n.right;
+			while(s.left != null){
+				s = s.left;
+			}
+			n.key = s.key;
+			n.value = s.value;
+			n = s;
+		}
+		Node child = n.left != null ? n.left : n.right;
+		replace(n, child);
+		retrace(n.parent);
+	}
+	
+	/*
+	 * Returns the number of key-value pairs stored in the tree
+	 */
+	
+	public int size(){
+		return size(root);
+	}
+	
+	/*
+	 * Returns the height of the tree; an empty tree has height -1
+	 */
+	
+	public int height(){
+		return height(root);
+	}
+	
+	/*
+	 * Returns the keys of the tree in ascending order
+	 */
+	
+	public String[] keys(){
+		String[] keys = new String[size()];
+		int i = 0;
+		for(Node n = first(root); n != null; n = next(n)){
+			keys[i++] = n.key;
+		}
+		return keys;
+	}
+	
+	/*
+	 * Returns the sum of the values in the tree
+	 */
+	
+	public long treeSum(){
+		long sum = 0;
+		for(Node n = first(root); n != null; n = next(n)){
+			sum += n.value;
+		}
+		return sum;
+	}
+	
+	/*
+	 * Returns the maximum sum of the values on a path from the root down to
+	 * a leaf, where (as in BinarySearchTree) a missing child counts as a path
+	 * of sum 0, so a path may also end at a node with only one child; returns
+	 * 0 for an empty tree
+	 */
+	
+	public long maxPathSum(){
+		if(root == null){
+			return 0;
+		}
+		long best = Long.MIN_VALUE, sum = 0;
+		Node prev = null, cur = root;
+		while(cur != null){
+			if(prev == cur.parent){
+				prev = cur;
+				sum += cur.value;
+				if(cur.left == null || cur.right == null){
+					best = Math.max(best, sum);
+				}
+				if(cur.left != null){
+					cur = cur.left;
+					continue;
+				}
+				if(cur.right != null){
+					cur = cur.right;
+					continue;
+				}
+			}
+			else if(prev == cur.left && cur.right != null){
+				prev = cur;
+				cur = cur.right;
+				continue;
+			}
+			sum -= cur.value;
+			prev = cur;
+			cur = cur.parent;
+		}
+		return best;
+	}
+	
+	/*
+	 * Doubles every value in the tree in place
+	 */
+	
+	public void doubles(){
+		scale(2);
+	}
+	
+	/*
+	 * Multiplies every value in the tree by a given factor in place
+	 */
+	
+	public void scale(long factor){
+		for(Node n = first(root); n != null; n = next(n)){
+			n.value *= factor;
+		}
+	}
+	
+	private Node find(String key){
+		Node n = root;
+		while(n != null){
+			int c = key.compareTo(n.key);
+			if(c > 0){
+				n = n.right;
+			}
+			else if(c < 0){
+				n = n.left;
+			}
+			else{
+				return n;
+			}
+		}
+		return null;
+	}
+	
+	private Node first(Node n){
+		if(n == null){
+			return null;
+		}
+		while(n.left != null){
+			n = n.left;
+		}
+		return n;
+	}
+	
+	/*
+	 * Returns the in-order successor of n, or null after the last node
+	 */
+	
+	private Node next(Node n){
+		if(n.right != null){
+			return first(n.right);
+		}
+		while(n.parent != null && n.parent.right == n){
+			n = n.parent;
+		}
+		return n.parent;
+	}
+	
+	private int height(Node n){
+		if(n == null){
+			return -1;
+		}
+		return n.height;
+	}
+	
+	private int size(Node n){
+		if(n == null){
+			return 0;
+		}
+		return n.size;
+	}
+	
+	private void update(Node n){
+		n.height = Math.max(height(n.left), height(n.right)) + 1;
+		n.size = size(n.left) + size(n.right) + 1;
+	}
+	
+	/*
+	 * Puts c in the place n occupies under its parent (or at the root); c
+	 * may be null
+	 */
+	
+	private void replace(Node n, Node c){
+		if(c != null){
+			c.parent = n.parent;
+		}
+		if(n.parent == null){
+			root = c;
+		}
+		else if(n.parent.left == n){
+			n.parent.left = c;
+		}
+		else{
+			n.parent.right = c;
+		}
+	}
+	
+	private Node rotateRight(Node n){
+		Node temp = n.left;
+		n.left = temp.right;
+		if(temp.right != null){
+			temp.right.parent = n;
+		}
+		replace(n, temp);
+		n.parent = temp;
+		temp.right = n;
+		update(n);
+		update(temp);
+		return temp;
+	}
+	
+	private Node rotateLeft(Node n){
+		Node temp = n.right;
+		n.right = temp.left;
+		if(temp.left != null){
+			temp.left.parent = n;
+		}
+		replace(n, temp);
+		n.parent = temp;
+		temp.left = n;
+		update(n);
+		update(temp);
+		return temp;
+	}
+	
+	/*
+	 * Updates n and rotates it if its balance factor has left [-1, 1];
+	 * returns the root of the subtree that now stands where n was
+	 */
+	
+	private Node rebalance(Node n){
+		update(n);
+		int bf = height(n.left) - height(n.right);
+		if(bf > 1){
+			if(height(n.left.left) < height(n.left.right)){
+				rotateLeft(n.left);
+			}
+			return rotateRight(n);
+		}
+		if(bf < -1){
+			if(height(n.right.right) < height(n.right.left)){
+				rotateRight(n.right);
+			}
+			return rotateLeft(n);
+		}
+		return n;
+	}
+	
+	/*
+	 * Rebalances every node from n up to the root
+	 */
+	
+	private void retrace(Node n){
+		while(n != null){
+			n = rebalance(n).parent;
+		}
+	}
+	
+	/*
+	 * Testing main
+	 */
+	
+	public static void main(String[] args){
+		LongTree t = new LongTree();
+		for(int i = 1; i <= 100000; i++){
+			t.insert(String.format("%06d", i), Integer.MAX_VALUE);
+		}
+		System.out.println(t.treeSum() + " " + t.maxPathSum() + " " + t.height());
+		t.doubles();
+		System.out.println(t.treeSum());
+	}
+	
+}
@@ -0,0 +1,54 @@
+/**
+ * MurmurHash.java
+ */
+
+/*
+ * The 32-bit MurmurHash3 function applied to the characters of a String, two
+ * characters per 32-bit block. Every input bit affects every output bit, so
+ * keys sharing a long prefix are spread as well as unrelated ones.
+ */
+
+public class MurmurHash implements HashFunction{
+	
+	private static final int C1 = 0xcc9e2d51;
+	private static final int C2 = 0x1b873593;
+	
+	private int seed;
+	
+	public MurmurHash(){
+		this(0);
+	}
+	
+	public MurmurHash(int seed){
+		this.seed = seed;
+	}
+	
+	public int hash(String s){
+		int h = seed;
+		int length = s.length();
+		int i = 0;
+		for(; i + 1 < length; i += 2){
+			int k = s.charAt(i) | (s.charAt(i + 1) << 16);
+			h ^= mixK(k);
+			h = Integer.rotateLeft(h, 13);
+			h = h * 5 + 0xe6546b64;
+		}
+		if(i < length){
+			h ^= mixK(s.charAt(i));
+		}
+		h ^= length * 2;
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+	
+	private static int mixK(int k){
+		k *= C1;
+		k = Integer.rotateLeft(k, 15);
+		return k * C2;
+	}
+	
+}
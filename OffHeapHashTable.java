@@ -0,0 +1,420 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * OffHeapHashTable.java
+ */
+
+/*
+ * This class is a hash table whose keys and values live outside the Java heap,
+ * in a single direct ByteBuffer or in a memory-mapped file. Since none of its
+ * entries are objects, millions of pairs add nothing for the garbage collector
+ * to trace, and a file-backed table is opened again by mapping the file: no
+ * pair is read or rehashed until it is looked up.
+ * 
+ * The buffer holds a header, an open-addressing slot array, and a data region:
+ * 
+ *   header   MAGIC, number of slots, number of pairs, end of data, garbage bytes
+ *   slots    per slot the key's hash and the offset of its record (0 if empty)
+ *   data     records of key length, value length, key chars, value bytes
+ * 
+ * Lookups probe the slots linearly and compare keys char by char in place.
+ * Removal empties the slot by shifting later slots of the run backwards and
+ * leaves the record as garbage; when the slots get too full or the data region
+ * runs out, the live records are copied into a new, larger buffer (for a
+ * mapped table a new file which replaces the old one), which also drops the
+ * garbage.
+ * 
+ * Keys are always hashed with MurmurHash so a file can be reopened by any
+ * process. Offsets are ints, so a table is limited to 2GB. The table is not
+ * crash-safe on its own: a pair being written when the process dies may be
+ * lost or leave the file unusable.
+ */
+
+public class OffHeapHashTable<E> implements TableInterface<E>{
+	
+	private static final int MAGIC = 0x4f484854;
+	private static final int HEADER = 20;
+	private static final int SLOT = 8;
+	private static final double LOAD_FACTOR = 0.75;
+	private static final int MIN_DATA = 4096;
+	
+	private ByteBuffer buffer;
+	private ValueCodec<E> codec;
+	private File file;
+	private HashFunction hashFunction = new MurmurHash();
+	
+	/*
+	 * Constructs a table in a direct buffer with room for at least the given
+	 * number of slots
+	 */
+	
+	public OffHeapHashTable(int size, ValueCodec<E> codec){
+		this.codec = codec;
+		int capacity = 1;
+		while(capacity < size){
+			capacity *= 2;
+		}
+		buffer = ByteBuffer.allocateDirect(HEADER + capacity * SLOT + MIN_DATA);
+		format(buffer, capacity);
+	}
+	
+	private OffHeapHashTable(ByteBuffer buffer, ValueCodec<E> codec, File file){
+		this.buffer = buffer;
+		this.codec = codec;
+		this.file = file;
+	}
+	
+	/*
+	 * Opens the table stored in a file, creating an empty one with room for
+	 * at least the given number of slots if the file does not exist or is empty.
+	 * A file whose header does not describe a table that fits in it is
+	 * refused, since every later access trusts the header
+	 */
+	
+	public static <E> OffHeapHashTable<E> open(String path, int size, ValueCodec<E> codec) throws IOException{
+		File file = new File(path);
+		if(file.length() == 0){
+			int capacity = 1;
+			while(capacity < size){
+				capacity *= 2;
+			}
+			ByteBuffer buffer = map(file, HEADER + capacity * SLOT + MIN_DATA);
+			format(buffer, capacity);
+			return new OffHeapHashTable<E>(buffer, codec, file);
+		}
+		ByteBuffer buffer = map(file, file.length());
+		if(buffer.getInt(0) != MAGIC){
+			throw new IOException("Not a table file: " + path);
+		}
+		int capacity = buffer.getInt(4);
+		if(capacity < 1 || (capacity & (capacity - 1)) != 0 || HEADER + (long) capacity * SLOT > file.length()){
+			throw new IOException("Corrupt table file: " + path);
+		}
+		int count = buffer.getInt(8), end = buffer.getInt(12);
+		if(count < 0 || count >= capacity || end < dataStart(capacity) || end > file.length()){
+			throw new IOException("Corrupt table file: " + path);
+		}
+		return new OffHeapHashTable<E>(buffer, codec, file);
+	}
+	
+	/*
+	 * Writes any changes to a file-backed table through to the disk
+	 */
+	
+	public void force(){
+		if(buffer instanceof MappedByteBuffer){
+			((MappedByteBuffer) buffer).force();
+		}
+	}
+	
+	/*
+	 * Inserts a given key-value pair, copying the table into a larger buffer
+	 * first if the slots or the data region are full
+	 */
+	
+	public void put(String key, E value){
+		int h = hashFunction.hash(key);
+		if(find(key, h) >= 0){
+			System.err.println("Key already exists");
+			return;
+		}
+		int length = codec.size(value);
+		int record = 8 + key.length() * 2 + length;
+		if(count() + 1 > LOAD_FACTOR * capacity() || dataEnd() + (long) record > buffer.capacity()){
+			grow(record);
+		}
+		int offset = dataEnd();
+		buffer.putInt(offset, key.length());
+		buffer.putInt(offset + 4, length);
+		for(int i = 0; i < key.length(); i++){
+			buffer.putChar(offset + 8 + i * 2, key.charAt(i));
+		}
+		codec.write(buffer, offset + 8 + key.length() * 2, value);
+		int mask = capacity() - 1;
+		int i = h & mask;
+		while(buffer.getInt(slot(i) + 4) != 0){
+			i = (i + 1) & mask;
+		}
+		buffer.putInt(slot(i), h);
+		buffer.putInt(slot(i) + 4, offset);
+		setDataEnd(offset + record);
+		setCount(count() + 1);
+	}
+	
+	/*
+	 * Returns the value associated with a given key if that key exists;
+	 * returns null if it does not
+	 */
+	
+	public E get(String key){
+		int i = find(key, hashFunction.hash(key));
+		if(i < 0){
+			return null;
+		}
+		int offset = buffer.getInt(slot(i) + 4);
+		return codec.read(buffer, offset + 8 + buffer.getInt(offset) * 2, buffer.getInt(offset + 4));
+	}
+	
+	/*
+	 * Returns true if a given key is in the table, false otherwise
+	 */
+	
+	public boolean hasKey(String key){
+		return find(key, hashFunction.hash(key)) >= 0;
+	}
+	
+	/*
+	 * Removes the key-value pair associated with a given key; its record
+	 * stays in the data region as garbage until the table is next copied
+	 */
+	
+	public void remove(String key){
+		int i = find(key, hashFunction.hash(key));
+		if(i < 0){
+			System.err.println("Key does not exist");
+			return;
+		}
+		int offset = buffer.getInt(slot(i) + 4);
+		setGarbage(garbage() + 8 + buffer.getInt(offset) * 2 + buffer.getInt(offset + 4));
+		int mask = capacity() - 1;
+		int j = i;
+		while(true){
+			j = (j + 1) & mask;
+			if(buffer.getInt(slot(j) + 4) == 0){
+				break;
+			}
+			if(!ProbingHashTable.stays(i, j, buffer.getInt(slot(j)) & mask)){
+				buffer.putLong(slot(i), buffer.getLong(slot(j)));
+				i = j;
+			}
+		}
+		buffer.putLong(slot(i), 0);
+		setCount(count() - 1);
+	}
+	
+	/*
+	 * Returns the number of key-value pairs stored in the table
+	 */
+	
+	public int size(){
+		return count();
+	}
+	
+	/*
+	 * Returns an array of Strings containing all of the keys present
+	 * in the table, in slot order
+	 */
+	
+	public String[] keys(){
+		String[] keys = new String[count()];
+		int j = 0;
+		for(int i = 0; i < capacity(); i++){
+			int offset = buffer.getInt(slot(i) + 4);
+			if(offset != 0){
+				char[] c = new char[buffer.getInt(offset)];
+				for(int k = 0; k < c.length; k++){
+					c[k] = buffer.getChar(offset + 8 + k * 2);
+				}
+				keys[j++] = new String(c);
+			}
+		}
+		return keys;
+	}
+	
+	/*
+	 * Returns an array of ints giving, for each slot, the number of keys
+	 * whose hash points to that slot
+	 */
+	
+	public int[] distribution(){
+		int[] dist = new int[capacity()];
+		int mask = dist.length - 1;
+		for(int i = 0; i < dist.length; i++){
+			if(buffer.getInt(slot(i) + 4) != 0){
+				dist[buffer.getInt(slot(i)) & mask]++;
+			}
+		}
+		return dist;
+	}
+	
+	/*
+	 * Returns the slot holding a given key, or -1 if it is not present
+	 */
+	
+	private int find(String key, int h){
+		int mask = capacity() - 1;
+		int i = h & mask;
+		while(true){
+			int offset = buffer.getInt(slot(i) + 4);
+			if(offset == 0){
+				return -1;
+			}
+			if(buffer.getInt(slot(i)) == h && keyEquals(offset, key)){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+	
+	private boolean keyEquals(int offset, String key){
+		if(buffer.getInt(offset) != key.length()){
+			return false;
+		}
+		for(int i = 0; i < key.length(); i++){
+			if(buffer.getChar(offset + 8 + i * 2) != key.charAt(i)){
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/*
+	 * Copies the live records into a new buffer with enough slots for one
+	 * more pair and at least twice the live data plus the next record
+	 */
+	
+	private void grow(int record){
+		int capacity = capacity();
+		if(count() + 1 > LOAD_FACTOR * capacity){
+			capacity *= 2;
+		}
+		long live = dataEnd() - dataStart(capacity()) - garbage();
+		long data = Math.max(MIN_DATA, 2 * (live + record));
+		long total = HEADER + (long) capacity * SLOT + data;
+		if(total > Integer.MAX_VALUE){
+			throw new IllegalStateException("Table would exceed 2GB");
+		}
+		try{
+			File temp = null;
+			ByteBuffer grown;
+			if(file == null){
+				grown = ByteBuffer.allocateDirect((int) total);
+			}
+			else{
+				temp = new File(file.getPath() + ".tmp");
+				temp.delete();
+				grown = map(temp, total);
+			}
+			format(grown, capacity);
+			int end = dataStart(capacity);
+			int mask = capacity - 1;
+			for(int i = 0; i < capacity(); i++){
+				int offset = buffer.getInt(slot(i) + 4);
+				if(offset == 0){
+					continue;
+				}
+				int h = buffer.getInt(slot(i));
+				int length = 8 + buffer.getInt(offset) * 2 + buffer.getInt(offset + 4);
+				for(int k = 0; k < length; k++){
+					grown.put(end + k, buffer.get(offset + k));
+				}
+				int j = h & mask;
+				while(grown.getInt(HEADER + j * SLOT + 4) != 0){
+					j = (j + 1) & mask;
+				}
+				grown.putInt(HEADER + j * SLOT, h);
+				grown.putInt(HEADER + j * SLOT + 4, end);
+				end += length;
+			}
+			grown.putInt(8, count());
+			grown.putInt(12, end);
+			if(temp != null){
+				((MappedByteBuffer) grown).force();
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			buffer = grown;
+		}
+		catch(IOException e){
+			throw new UncheckedIOException(e);
+		}
+	}
+	
+	private static MappedByteBuffer map(File file, long size) throws IOException{
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try{
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+		finally{
+			raf.close();
+		}
+	}
+	
+	/*
+	 * Writes the header of an empty table with the given number of slots
+	 * and clears the slots
+	 */
+	
+	private static void format(ByteBuffer buffer, int capacity){
+		buffer.putInt(0, MAGIC);
+		buffer.putInt(4, capacity);
+		buffer.putInt(8, 0);
+		buffer.putInt(12, dataStart(capacity));
+		buffer.putInt(16, 0);
+		for(int i = 0; i < capacity; i++){
+			buffer.putLong(HEADER + i * SLOT, 0);
+		}
+	}
+	
+	private static int dataStart(int capacity){
+		return HEADER + capacity * SLOT;
+	}
+	
+	private int slot(int i){
+		return HEADER + i * SLOT;
+	}
+	
+	private int capacity(){
+		return buffer.getInt(4);
+	}
+	
+	private int count(){
+		return buffer.getInt(8);
+	}
+	
+	private void setCount(int count){
+		buffer.putInt(8, count);
+	}
+	
+	private int dataEnd(){
+		return buffer.getInt(12);
+	}
+	
+	private void setDataEnd(int end){
+		buffer.putInt(12, end);
+	}
+	
+	private int garbage(){
+		return buffer.getInt(16);
+	}
+	
+	private void setGarbage(int garbage){
+		buffer.putInt(16, garbage);
+	}
+	
+	/*
+	 * Testing main
+	 */
+	
+	public static void main(String[] args) throws IOException{
+		OffHeapHashTable<Integer> h = OffHeapHashTable.open(args.length > 0 ? args[0] : "table.bin", 16, ValueCodec.INTEGER);
+		String[] strings = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
+		for(int i = 0; i < strings.length; i++){
+			if(!h.hasKey(strings[i])){
+				h.put(strings[i], i);
+			}
+		}
+		h.force();
+		for(String s: h.keys()){
+			System.out.println(s + " " + h.get(s));
+		}
+	}
+	
+}
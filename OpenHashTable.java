@@ -0,0 +1,114 @@
+/**
+ * OpenHashTable.java
+ */
+
+/*
+ * This class is a hash table which uses open addressing instead of a tree per
+ * bucket. Keys, their cached hashes and values are stored in three parallel
+ * arrays; a key lives in the first free slot at or after the slot its hash
+ * points to (linear probing), so a lookup scans a short run of contiguous
+ * array entries instead of following node pointers. The keys and hashes are
+ * kept by ProbingHashTable, shared with IntHashTable and LongHashTable; this
+ * class only adds the values.
+ * 
+ * Removal shifts later entries of the same run backwards to fill the gap
+ * rather than leaving a marker, so runs never fill up with deleted slots.
+ * 
+ * The number of slots is always a power of two and doubles once the table is
+ * fuller than its load factor. Like HashTable, putting a key that is already
+ * present leaves the old value in place.
+ */
+
+public class OpenHashTable<E> extends ProbingHashTable implements TableInterface<E>{
+	
+	private Object[] values;
+	
+	/*
+	 * Constructs a table with room for at least the given number of slots
+	 */
+	
+	public OpenHashTable(int size){
+		this(size, DEFAULT_LOAD_FACTOR, new MurmurHash());
+	}
+	
+	/*
+	 * Constructs a table with room for at least the given number of slots,
+	 * which doubles once the number of pairs exceeds loadFactor times the
+	 * number of slots; loadFactor must be below 1
+	 */
+	
+	public OpenHashTable(int size, double loadFactor, HashFunction hashFunction){
+		super(size, loadFactor, hashFunction);
+		values = new Object[capacity()];
+	}
+	
+	/*
+	 * Inserts a given key-value pair into the first free slot of its run;
+	 * the table only grows once the key is known to be new
+	 */
+	
+	public void put(String key, E value){
+		int i = slot(key);
+		if(i >= 0){
+			System.err.println("Key already exists");
+			return;
+		}
+		i = add(key, -i - 1);
+		values[i] = value;
+	}
+	
+	/*
+	 * Returns the value associated with a given key if that key exists;
+	 * returns null if it does not
+	 */
+	
+	public E get(String key){
+		int i = slot(key);
+		if(i < 0){
+			return null;
+		}
+		@SuppressWarnings("unchecked")
+		E value = (E) values[i];
+		return value;
+	}
+	
+	void moveValue(int from, int to){
+		values[to] = values[from];
+	}
+	
+	void clearValue(int i){
+		values[i] = null;
+	}
+	
+	void moveValues(int capacity, int[] to){
+		Object[] oldValues = values;
+		values = new Object[capacity];
+		for(int i = 0; i < to.length; i++){
+			if(to[i] >= 0){
+				values[to[i]] = oldValues[i];
+			}
+		}
+	}
+	
+	/*
+	 * Testing main
+	 */
+	
+	public static void main(String[] args){
+		OpenHashTable<Integer> h = new OpenHashTable<Integer>(16);
+		String[] strings = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
+		for(int i = 0; i < strings.length; i++){
+			h.put(strings[i], i);
+		}
+		h.remove("term");
+		strings = h.keys();
+		for(String s: strings){
+			System.out.println(s + " " + h.get(s));
+		}
+		int[] dist = h.distribution();
+		for(int i: dist){
+			System.out.println(i);
+		}
+	}
+	
+}
@@ -0,0 +1,38 @@
+/**
+ * PolynomialHash.java
+ */
+
+/*
+ * Hashes a String as a polynomial in its characters (Horner's rule with the
+ * given base, overflowing freely), then multiplies by the golden ratio
+ * constant and folds the high bits down so that keys differing only in their
+ * last characters still land in different buckets when the table masks off
+ * the low bits.
+ */
+
+public class PolynomialHash implements HashFunction{
+	
+	private int base;
+	
+	/*
+	 * Constructs a polynomial hash with base 31
+	 */
+	
+	public PolynomialHash(){
+		this(31);
+	}
+	
+	public PolynomialHash(int base){
+		this.base = base;
+	}
+	
+	public int hash(String s){
+		int x = 0;
+		for(int i = 0; i < s.length(); i++){
+			x = x * base + s.charAt(i);
+		}
+		x *= 0x9E3779B9;
+		return x ^ (x >>> 16);
+	}
+	
+}
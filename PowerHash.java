@@ -0,0 +1,39 @@
+/**
+ * PowerHash.java
+ */
+
+/*
+ * Sums each character raised to the power of its position (the first
+ * character to the power 1), with integer arithmetic that is allowed to
+ * overflow. This is the arithmetic of HashTable.hash, which reduces the sum
+ * to an index; it collides often on similar Strings.
+ */
+
+public class PowerHash implements HashFunction{
+	
+	public int hash(String s){
+		int x = 0;
+		for(int i = 0; i < s.length(); i++){
+			x += pow(s.charAt(i), i + 1);
+		}
+		return x;
+	}
+	
+	/*
+	 * Returns base raised to a non-negative power, overflowing like int
+	 * multiplication does
+	 */
+	
+	private static int pow(int base, int exp){
+		int x = 1;
+		while(exp > 0){
+			if((exp & 1) == 1){
+				x *= base;
+			}
+			base *= base;
+			exp >>= 1;
+		}
+		return x;
+	}
+	
+}
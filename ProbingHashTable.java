@@ -0,0 +1,225 @@
+/**
+ * ProbingHashTable.java
+ */
+
+/*
+ * The part of OpenHashTable, IntHashTable and LongHashTable that does not
+ * depend on the type of their values: keys and their cached hashes in two
+ * parallel arrays with linear probing, backward-shift removal and doubling.
+ * A subclass keeps the values in an array parallel to these (a primitive one
+ * for IntHashTable and LongHashTable, so no value is ever boxed) and moves
+ * them when asked.
+ */
+
+abstract class ProbingHashTable{
+
+	static final double DEFAULT_LOAD_FACTOR = 0.75;
+
+	private String[] keys;
+	private int[] hashes;
+	private int count;
+	private double loadFactor;
+	private HashFunction hashFunction;
+	private int lastHash;
+
+	/*
+	 * Sets up the keys with room for at least the given number of slots,
+	 * which double once the number of pairs exceeds loadFactor times the
+	 * number of slots; loadFactor must be below 1. The subclass then makes
+	 * its values array capacity() long
+	 */
+
+	ProbingHashTable(int size, double loadFactor, HashFunction hashFunction){
+		if(size < 1 || !(loadFactor > 0 && loadFactor < 1) || hashFunction == null){
+			throw new IllegalArgumentException();
+		}
+		this.loadFactor = loadFactor;
+		this.hashFunction = hashFunction;
+		int capacity = 1;
+		while(capacity < size){
+			capacity *= 2;
+		}
+		keys = new String[capacity];
+		hashes = new int[capacity];
+	}
+
+	/*
+	 * Returns true if a given key is in the table, false otherwise
+	 */
+
+	public boolean hasKey(String key){
+		return slot(key) >= 0;
+	}
+
+	/*
+	 * Removes the key-value pair associated with a given key, then moves
+	 * back any later entry of the run that may now sit closer to its home slot
+	 */
+
+	public void remove(String key){
+		int i = slot(key);
+		if(i < 0){
+			System.err.println("Key does not exist");
+			return;
+		}
+		int mask = keys.length - 1;
+		int j = i;
+		while(true){
+			j = (j + 1) & mask;
+			if(keys[j] == null){
+				break;
+			}
+			if(!stays(i, j, hashes[j] & mask)){
+				keys[i] = keys[j];
+				hashes[i] = hashes[j];
+				moveValue(j, i);
+				i = j;
+			}
+		}
+		keys[i] = null;
+		clearValue(i);
+		count--;
+	}
+
+	/*
+	 * Returns the number of key-value pairs stored in the table
+	 */
+
+	public int size(){
+		return count;
+	}
+
+	/*
+	 * Returns an array of Strings containing all of the keys present
+	 * in the table, in slot order
+	 */
+
+	public String[] keys(){
+		String[] result = new String[count];
+		int j = 0;
+		for(int i = 0; i < keys.length; i++){
+			if(keys[i] != null){
+				result[j++] = keys[i];
+			}
+		}
+		return result;
+	}
+
+	/*
+	 * Returns an array of ints giving, for each slot, the number of keys
+	 * whose hash points to that slot
+	 */
+
+	public int[] distribution(){
+		int[] dist = new int[keys.length];
+		int mask = keys.length - 1;
+		for(int i = 0; i < keys.length; i++){
+			if(keys[i] != null){
+				dist[hashes[i] & mask]++;
+			}
+		}
+		return dist;
+	}
+
+	/*
+	 * Returns the number of slots
+	 */
+
+	int capacity(){
+		return keys.length;
+	}
+
+	/*
+	 * Returns the slot holding a given key, or -(i + 1) where i is the empty
+	 * slot that ended the search if it is not present; the key's hash is kept
+	 * in lastHash so that add does not have to compute it again
+	 */
+
+	int slot(String key){
+		int h = hashFunction.hash(key);
+		int mask = keys.length - 1;
+		int i = h & mask;
+		while(keys[i] != null){
+			if(hashes[i] == h && key.equals(keys[i])){
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		lastHash = h;
+		return -i - 1;
+	}
+
+	/*
+	 * Adds a key that slot has just reported missing, with value 0, into
+	 * the empty slot i (or, if the table has to grow first, into the first
+	 * empty slot of its run in the grown table); returns its slot
+	 */
+
+	int add(String key, int i){
+		int h = lastHash;
+		if(count + 1 > loadFactor * keys.length){
+			resize(keys.length * 2);
+			int mask = keys.length - 1;
+			i = h & mask;
+			while(keys[i] != null){
+				i = (i + 1) & mask;
+			}
+		}
+		keys[i] = key;
+		hashes[i] = h;
+		count++;
+		return i;
+	}
+
+	/*
+	 * Returns true if the entry in slot j, whose hash points to slot home,
+	 * has to stay where it is when slot i, earlier in the same run, is
+	 * emptied: moving it back to i would put it before its home slot.
+	 * Shared with OffHeapHashTable, which lays its slots out the same way
+	 */
+	
+	static boolean stays(int i, int j, int home){
+		if(i <= j){
+			return i < home && home <= j;
+		}
+		return i < home || home <= j;
+	}
+	
+	/*
+	 * Value moves, done by the subclass on its values array
+	 */
+
+	abstract void moveValue(int from, int to);
+
+	abstract void clearValue(int i);
+
+	/*
+	 * Replaces the values array with one of the given capacity, moving the
+	 * value in each old slot i to slot to[i] (none if to[i] is negative)
+	 */
+
+	abstract void moveValues(int capacity, int[] to);
+
+	private void resize(int capacity){
+		String[] oldKeys = keys;
+		int[] oldHashes = hashes;
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		int[] to = new int[oldKeys.length];
+		int mask = capacity - 1;
+		for(int i = 0; i < oldKeys.length; i++){
+			to[i] = -1;
+			if(oldKeys[i] != null){
+				int j = oldHashes[i] & mask;
+				while(keys[j] != null){
+					j = (j + 1) & mask;
+				}
+				keys[j] = oldKeys[i];
+				hashes[j] = oldHashes[i];
+				to[i] = j;
+			}
+		}
+		moveValues(capacity, to);
+	}
+
+}
@@ -0,0 +1,520 @@
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+/**
+ * RadixTree.java
+ */
+
+/*
+ * This class is a compressed trie (radix tree) mapping String keys to values.
+ * Every edge is labelled with a run of characters, and a key is spelled out
+ * by the labels on the path from the root to its node, so keys that share a
+ * prefix share the nodes (and the characters) for it: "tall", "talk" and
+ * "tarp" store "ta" once, then "l" once, and only their last characters
+ * apart. A node with a single child and no value of its own is merged into
+ * that child, so the tree has at most two nodes per key.
+ *
+ * Finding a key compares each character of the key once, against the labels
+ * along its path, instead of comparing the whole key again at every level as
+ * a BinarySearchTree does. A node's children are kept sorted by the first
+ * character of their labels, which makes an in-order walk visit the keys in
+ * the same order as String.compareTo, so the tree answers the same ordered
+ * queries: iteration over all keys, a range, or a prefix.
+ *
+ * Keys are not kept as Strings; iterating rebuilds each one in a shared char
+ * buffer.
+ */
+
+public class RadixTree<E> implements Iterable<String>{
+
+	private static final char[] EMPTY = new char[0];
+
+	/*
+	 * A node with the label on the edge leading to it, its value if a key
+	 * ends here, and its children sorted by the first character of their
+	 * labels (kept alongside in firsts so a child is found without touching
+	 * the other children)
+	 */
+
+	private static class Node<E>{
+		private char[] label;
+		private E value;
+		private boolean present;
+		private char[] firsts = EMPTY;
+		private Node<E>[] children;
+		private int count;
+
+		private Node(char[] label){
+			this.label = label;
+		}
+
+		/*
+		 * Returns the index of the child whose label starts with c, or -1
+		 */
+
+		private int find(char c){
+			int i = lowerBound(c);
+			return i < count && firsts[i] == c ? i : -1;
+		}
+
+		/*
+		 * Returns the index of the first child whose label starts with a
+		 * character not less than c
+		 */
+
+		private int lowerBound(char c){
+			int lo = 0, hi = count;
+			while(lo < hi){
+				int mid = (lo + hi) >>> 1;
+				if(firsts[mid] < c){
+					lo = mid + 1;
+				}
+				else{
+					hi = mid;
+				}
+			}
+			return lo;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void add(Node<E> child){
+			if(count == firsts.length){
+				int capacity = Math.max(2, count * 2);
+				firsts = Arrays.copyOf(firsts, capacity);
+				children = children == null ? (Node<E>[]) new Node<?>[capacity] : Arrays.copyOf(children, capacity);
+			}
+			int i = lowerBound(child.label[0]);
+			System.arraycopy(firsts, i, firsts, i + 1, count - i);
+			System.arraycopy(children, i, children, i + 1, count - i);
+			firsts[i] = child.label[0];
+			children[i] = child;
+			count++;
+		}
+
+		private void removeChild(int i){
+			System.arraycopy(firsts, i + 1, firsts, i, count - i - 1);
+			System.arraycopy(children, i + 1, children, i, count - i - 1);
+			count--;
+			children[count] = null;
+		}
+	}
+
+	/*
+	 * Walks the keys in order from a starting point, with the path from the
+	 * root kept in an explicit stack: for each node on it, the index of the
+	 * next child to visit and the length of the key up to and including its
+	 * label. The tree must not be changed while an iterator is in use
+	 */
+
+	private class KeyIterator implements Iterator<String>{
+		@SuppressWarnings("unchecked")
+		private Node<E>[] nodes = (Node<E>[]) new Node<?>[16];
+		private int[] next = new int[16];
+		private int[] lengths = new int[16];
+		private int depth;
+		private char[] buffer = new char[32];
+		private int length;
+		private Node<E> nextNode;
+		private String nextKey;
+		private String to;
+		private String prefix;
+
+		/*
+		 * Starts at the first key not less than from (or the first key if from
+		 * is null) and stops before to, or after the last key starting with
+		 * prefix; to and prefix may be null
+		 */
+
+		private KeyIterator(String from, String to, String prefix){
+			this.to = to;
+			this.prefix = prefix;
+			push(root);
+			if(from == null){
+				if(root.present){
+					found(root);
+				}
+				else{
+					advance();
+				}
+				return;
+			}
+			Node<E> n = root;
+			int i = 0;
+			while(true){
+				if(i == from.length()){
+					if(n.present){
+						found(n);
+					}
+					else{
+						advance();
+					}
+					return;
+				}
+				char c = from.charAt(i);
+				int k = n.lowerBound(c);
+				next[depth - 1] = k;
+				if(k == n.count || n.firsts[k] != c){
+					advance();
+					return;
+				}
+				Node<E> child = n.children[k];
+				int m = match(child.label, from, i);
+				if(m == child.label.length){
+					next[depth - 1] = k + 1;
+					push(child);
+					n = child;
+					i += m;
+					continue;
+				}
+				if(i + m < from.length() && child.label[m] < from.charAt(i + m)){
+					// everything under the child comes before from
+					next[depth - 1] = k + 1;
+				}
+				advance();
+				return;
+			}
+		}
+
+		public boolean hasNext(){
+			return nextKey != null && (to == null || nextKey.compareTo(to) < 0) && (prefix == null || nextKey.startsWith(prefix));
+		}
+
+		public String next(){
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			String key = nextKey;
+			advance();
+			return key;
+		}
+
+		public void remove(){
+			throw new UnsupportedOperationException();
+		}
+
+		/*
+		 * Returns the node of the key next() would return
+		 */
+
+		private Node<E> peek(){
+			return nextNode;
+		}
+
+		/*
+		 * Moves on to the next node holding a key, in order
+		 */
+
+		private void advance(){
+			while(depth > 0){
+				Node<E> n = nodes[depth - 1];
+				if(next[depth - 1] < n.count){
+					Node<E> child = n.children[next[depth - 1]++];
+					push(child);
+					if(child.present){
+						found(child);
+						return;
+					}
+				}
+				else{
+					depth--;
+					length = depth > 0 ? lengths[depth - 1] : 0;
+				}
+			}
+			nextNode = null;
+			nextKey = null;
+		}
+
+		private void found(Node<E> n){
+			nextNode = n;
+			nextKey = new String(buffer, 0, length);
+		}
+
+		private void push(Node<E> n){
+			if(depth == nodes.length){
+				nodes = Arrays.copyOf(nodes, depth * 2);
+				next = Arrays.copyOf(next, depth * 2);
+				lengths = Arrays.copyOf(lengths, depth * 2);
+			}
+			if(length + n.label.length > buffer.length){
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + n.label.length));
+			}
+			System.arraycopy(n.label, 0, buffer, length, n.label.length);
+			length += n.label.length;
+			nodes[depth] = n;
+			next[depth] = 0;
+			lengths[depth] = length;
+			depth++;
+		}
+	}
+
+	private Node<E> root = new Node<E>(EMPTY);
+	private int size;
+
+	public RadixTree(){
+	}
+
+	/*
+	 * Inserts a key-value pair, splitting the edge where the key leaves the
+	 * existing labels if necessary
+	 */
+
+	public void insert(String key, E value){
+		Node<E> n = root;
+		int i = 0;
+		while(i < key.length()){
+			int k = n.find(key.charAt(i));
+			if(k < 0){
+				Node<E> leaf = new Node<E>(key.substring(i).toCharArray());
+				leaf.value = value;
+				leaf.present = true;
+				n.add(leaf);
+				size++;
+				return;
+			}
+			Node<E> child = n.children[k];
+			int m = match(child.label, key, i);
+			if(m < child.label.length){
+				Node<E> mid = new Node<E>(Arrays.copyOf(child.label, m));
+				child.label = Arrays.copyOfRange(child.label, m, child.label.length);
+				mid.add(child);
+				n.children[k] = mid;
+				child = mid;
+			}
+			n = child;
+			i += m;
+		}
+		if(n.present){
+			System.err.println("Key already exists");
+			return;
+		}
+		n.value = value;
+		n.present = true;
+		size++;
+	}
+
+	/*
+	 * Returns the value associated with a given key if it is present,
+	 * null otherwise
+	 */
+
+	public E search(String key){
+		Node<E> n = find(key);
+		return n == null ? null : n.value;
+	}
+
+	public boolean hasKey(String key){
+		return find(key) != null;
+	}
+
+	/*
+	 * Removes a key, then removes its node if it has no children left and
+	 * merges away any node left with one child and no key of its own
+	 */
+
+	public void remove(String key){
+		@SuppressWarnings("unchecked")
+		Node<E>[] path = (Node<E>[]) new Node<?>[16];
+		int[] slots = new int[16];
+		int depth = 0;
+		Node<E> n = root;
+		int i = 0;
+		while(i < key.length()){
+			int k = n.find(key.charAt(i));
+			if(k < 0){
+				System.err.println("Key does not exist");
+				return;
+			}
+			Node<E> child = n.children[k];
+			if(match(child.label, key, i) < child.label.length){
+				System.err.println("Key does not exist");
+				return;
+			}
+			if(depth == path.length){
+				path = Arrays.copyOf(path, depth * 2);
+				slots = Arrays.copyOf(slots, depth * 2);
+			}
+			path[depth] = n;
+			slots[depth] = k;
+			depth++;
+			n = child;
+			i += child.label.length;
+		}
+		if(!n.present){
+			System.err.println("Key does not exist");
+			return;
+		}
+		n.value = null;
+		n.present = false;
+		size--;
+		if(depth == 0){
+			return;
+		}
+		Node<E> parent = path[depth - 1];
+		if(n.count == 0){
+			parent.removeChild(slots[depth - 1]);
+			if(depth > 1 && !parent.present && parent.count == 1){
+				merge(path[depth - 2], slots[depth - 2]);
+			}
+		}
+		else if(n.count == 1){
+			merge(parent, slots[depth - 1]);
+		}
+	}
+
+	public int size(){
+		return size;
+	}
+
+	public boolean isEmpty(){
+		return size == 0;
+	}
+
+	/*
+	 * Returns an array of all of the keys in ascending order
+	 */
+
+	public String[] keys(){
+		String[] keys = new String[size];
+		int i = 0;
+		for(String key: this){
+			keys[i++] = key;
+		}
+		return keys;
+	}
+
+	/*
+	 * Passes every key and its value to an action, in ascending key order
+	 */
+
+	public void forEach(BiConsumer<? super String, ? super E> action){
+		KeyIterator i = new KeyIterator(null, null, null);
+		while(i.hasNext()){
+			Node<E> n = i.peek();
+			action.accept(i.next(), n.value);
+		}
+	}
+
+	/*
+	 * Returns an iterator over the keys in ascending order
+	 */
+
+	public Iterator<String> iterator(){
+		return new KeyIterator(null, null, null);
+	}
+
+	/*
+	 * Returns the keys from from (inclusive) to to (exclusive), in ascending
+	 * order, computed lazily as they are iterated; either bound may be null
+	 */
+
+	public Iterable<String> range(final String from, final String to){
+		return new Iterable<String>(){
+			public Iterator<String> iterator(){
+				return new KeyIterator(from, to, null);
+			}
+		};
+	}
+
+	/*
+	 * Returns the keys strictly less than to, in ascending order
+	 */
+
+	public Iterable<String> head(String to){
+		return range(null, to);
+	}
+
+	/*
+	 * Returns the keys greater than or equal to from, in ascending order
+	 */
+
+	public Iterable<String> tail(String from){
+		return range(from, null);
+	}
+
+	/*
+	 * Returns the keys starting with a given prefix, in ascending order;
+	 * these all lie under one node of the trie
+	 */
+
+	public Iterable<String> prefix(final String prefix){
+		return new Iterable<String>(){
+			public Iterator<String> iterator(){
+				return new KeyIterator(prefix, null, prefix);
+			}
+		};
+	}
+
+	/*
+	 * Returns the node holding a key, or null if the key is not present
+	 */
+
+	private Node<E> find(String key){
+		Node<E> n = root;
+		int i = 0;
+		while(i < key.length()){
+			int k = n.find(key.charAt(i));
+			if(k < 0){
+				return null;
+			}
+			n = n.children[k];
+			if(match(n.label, key, i) < n.label.length){
+				return null;
+			}
+			i += n.label.length;
+		}
+		return n.present ? n : null;
+	}
+
+	/*
+	 * Replaces child k of parent, which has no key and a single child, with
+	 * that child, prepending its label to the child's
+	 */
+
+	private void merge(Node<E> parent, int k){
+		Node<E> n = parent.children[k];
+		Node<E> child = n.children[0];
+		char[] label = Arrays.copyOf(n.label, n.label.length + child.label.length);
+		System.arraycopy(child.label, 0, label, n.label.length, child.label.length);
+		child.label = label;
+		parent.children[k] = child;
+	}
+
+	/*
+	 * Returns how many characters of label match key starting at index i
+	 */
+
+	private static int match(char[] label, String key, int i){
+		int m = 0;
+		int max = Math.min(label.length, key.length() - i);
+		while(m < max && label[m] == key.charAt(i + m)){
+			m++;
+		}
+		return m;
+	}
+
+	/*
+	 * Testing main
+	 */
+
+	public static void main(String[] args){
+		RadixTree<Integer> t = new RadixTree<Integer>();
+		String[] strings = {"tall", "talk", "tarp", "tern", "team", "term", "tram", "trap", "trams", "tapes", "trips", "teams", "tames", "tomes"};
+		for(int i = 0; i < strings.length; i++){
+			t.insert(strings[i], i);
+		}
+		for(String s: t){
+			System.out.println(s + " " + t.search(s));
+		}
+		t.remove("team");
+		t.remove("tram");
+		for(String s: t.range("te", "tr")){
+			System.out.println(s);
+		}
+		for(String s: t.prefix("tra")){
+			System.out.println(s);
+		}
+	}
+
+}
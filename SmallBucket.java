@@ -0,0 +1,237 @@
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * SmallBucket.java
+ */
+
+/*
+ * A bucket for a handful of pairs: the keys and values sit in two small
+ * arrays, sorted by key, and are found by scanning from the front. With one
+ * to eight pairs this takes a few comparisons over contiguous memory and
+ * costs two short arrays instead of a tree node per pair. HashTable swaps a
+ * SmallBucket for a BinarySearchTree once it grows past its threshold.
+ */
+
+public class SmallBucket<E> implements Bucket<E>{
+	
+	private String[] keys;
+	private Object[] values;
+	private int size;
+	
+	public SmallBucket(){
+		this(1);
+	}
+	
+	public SmallBucket(int capacity){
+		keys = new String[Math.max(capacity, 1)];
+		values = new Object[keys.length];
+	}
+	
+	/*
+	 * Returns the value stored with a key, or null if the key is not here
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public E search(String key){
+		for(int i = 0; i < size; i++){
+			int c = key.compareTo(keys[i]);
+			if(c == 0){
+				return (E) values[i];
+			}
+			if(c < 0){
+				return null;
+			}
+		}
+		return null;
+	}
+	
+	/*
+	 * Searches like search, and records the number of key comparisons it
+	 * took in the given metrics
+	 */
+	
+	@SuppressWarnings("unchecked")
+	E search(String key, TableMetrics metrics){
+		for(int i = 0; i < size; i++){
+			int c = key.compareTo(keys[i]);
+			if(c <= 0){
+				metrics.recordComparisons(i + 1);
+				return c == 0 ? (E) values[i] : null;
+			}
+		}
+		metrics.recordComparisons(size);
+		return null;
+	}
+	
+	public void insert(String key, E value){
+		int i = 0;
+		while(i < size){
+			int c = key.compareTo(keys[i]);
+			if(c == 0){
+				System.err.println("Key already exists");
+				return;
+			}
+			if(c < 0){
+				break;
+			}
+			i++;
+		}
+		if(size == keys.length){
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+	
+	/*
+	 * Inserts the pairs one at a time; a batch big enough for a tree is
+	 * built as one by HashTable instead
+	 */
+	
+	public void insertAll(String[] keys, E[] values, int from, int to){
+		for(int i = from; i < to; i++){
+			if(search(keys[i]) == null){
+				insert(keys[i], values[i]);
+			}
+		}
+	}
+	
+	/*
+	 * Walks the sorted keys and the sorted batch side by side
+	 */
+	
+	public void searchAll(String[] keys, int from, int to, Object[] results){
+		int j = 0;
+		for(int i = from; i < to; i++){
+			int c = -1;
+			while(j < size && (c = keys[i].compareTo(this.keys[j])) > 0){
+				j++;
+			}
+			results[i] = j < size && c == 0 ? values[j] : null;
+		}
+	}
+	
+	public void remove(String key){
+		for(int i = 0; i < size; i++){
+			if(key.equals(keys[i])){
+				System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+				System.arraycopy(values, i + 1, values, i, size - i - 1);
+				size--;
+				keys[size] = null;
+				values[size] = null;
+				return;
+			}
+		}
+		System.err.println("Key does not exist");
+	}
+	
+	public int removeAll(String[] keys, int from, int to){
+		int kept = 0;
+		int i = from;
+		for(int j = 0; j < size; j++){
+			while(i < to && keys[i].compareTo(this.keys[j]) < 0){
+				i++;
+			}
+			if(i < to && keys[i].equals(this.keys[j])){
+				continue;
+			}
+			this.keys[kept] = this.keys[j];
+			values[kept] = values[j];
+			kept++;
+		}
+		int removed = size - kept;
+		Arrays.fill(this.keys, kept, size, null);
+		Arrays.fill(values, kept, size, null);
+		size = kept;
+		return removed;
+	}
+	
+	public int size(){
+		return size;
+	}
+	
+	public boolean isEmpty(){
+		return size == 0;
+	}
+	
+	/*
+	 * A scan can compare against every key, so this is size - 1
+	 */
+	
+	public int height(){
+		return size - 1;
+	}
+	
+	public long rotations(){
+		return 0;
+	}
+	
+	public String[] keys(){
+		return Arrays.copyOf(keys, size);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<? super String, ? super E> action){
+		for(int i = 0; i < size; i++){
+			action.accept(keys[i], (E) values[i]);
+		}
+	}
+	
+	public int page(String after, String[] keys, Object[] values, int from){
+		int i = 0;
+		if(after != null){
+			while(i < size && this.keys[i].compareTo(after) <= 0){
+				i++;
+			}
+		}
+		int n = Math.min(size - i, keys.length - from);
+		System.arraycopy(this.keys, i, keys, from, n);
+		System.arraycopy(this.values, i, values, from, n);
+		return from + n;
+	}
+	
+	public int treeSum(){
+		int sum = 0;
+		for(int i = 0; i < size; i++){
+			sum += BinarySearchTree.intValue(values[i]);
+		}
+		return sum;
+	}
+	
+	public long longTreeSum(){
+		long sum = 0;
+		for(int i = 0; i < size; i++){
+			sum += BinarySearchTree.intValue(values[i]);
+		}
+		return sum;
+	}
+	
+	/*
+	 * Returns the number of leaves the pairs would have as a balanced tree,
+	 * so a table's leaf count does not depend on how its buckets are stored
+	 */
+	
+	public int leafCount(){
+		return leaves(size);
+	}
+	
+	private static int leaves(int n){
+		if(n <= 1){
+			return n;
+		}
+		int mid = n / 2;
+		return leaves(mid) + leaves(n - 1 - mid);
+	}
+	
+	public void doubles(){
+		for(int i = 0; i < size; i++){
+			values[i] = BinarySearchTree.doubled(values[i]);
+		}
+	}
+	
+}
@@ -0,0 +1,417 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot.java
+ */
+
+/*
+ * Saves a HashTable or a BinarySearchTree to a compact binary file and loads
+ * it back. The file is
+ * 
+ *   MAGIC, VERSION, number of buckets, CRC32 of those three ints
+ *   for each non-empty bucket: bucket index, number of pairs, then per pair
+ *       key length, the key's chars (two bytes each), value length, value
+ *       bytes
+ *   -1
+ *   CRC32 of everything above, as a long
+ * 
+ * where values are encoded by a ValueCodec and a tree is written as a table
+ * with a single bucket. Pairs are written in ascending key order, so loading
+ * builds each bucket directly from the sorted pairs in linear time
+ * (BinarySearchTree.build) with no rebalancing at all.
+ * 
+ * Both directions stream through a fixed-size buffer and a FileChannel, so the
+ * file is never held in memory as a whole. A snapshot is written to a
+ * temporary file which then replaces the target, and the directory is
+ * forced once it has, so a crash while saving leaves the previous snapshot
+ * intact and a write that has returned is on disk under its own name. A
+ * file whose checksum does not match is rejected when loaded. Keys are
+ * stored as their UTF-16 chars rather than encoded, so every String (even
+ * one with a lone surrogate) comes back exactly as it was saved. The header has a checksum of its own and every
+ * length and count is checked against the bytes left in the file before
+ * anything is allocated for it, so a corrupt file is rejected with an
+ * IOException rather than a huge allocation.
+ */
+
+public class Snapshot{
+	
+	private static final int MAGIC = 0x534e4150;
+	private static final int VERSION = 2;
+	private static final int BUFFER = 1 << 16;
+	
+	/*
+	 * Buffers bytes on their way to a channel, adding them to a checksum as
+	 * they are flushed
+	 */
+	
+	private static class Writer{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+		private CRC32 crc = new CRC32();
+		
+		private Writer(FileChannel channel){
+			this.channel = channel;
+		}
+		
+		private void ensure(int n) throws IOException{
+			if(buffer.remaining() < n){
+				flush();
+				if(buffer.capacity() < n){
+					buffer = ByteBuffer.allocate(n);
+				}
+			}
+		}
+		
+		private void putInt(int x) throws IOException{
+			ensure(4);
+			buffer.putInt(x);
+		}
+		
+		private void putLong(long x) throws IOException{
+			ensure(8);
+			buffer.putLong(x);
+		}
+		
+		private <E> void putPair(String key, E value, ValueCodec<E> codec) throws IOException{
+			int length = codec.size(value);
+			ensure(8 + 2 * key.length() + length);
+			buffer.putInt(key.length());
+			for(int i = 0; i < key.length(); i++){
+				buffer.putChar(key.charAt(i));
+			}
+			buffer.putInt(length);
+			codec.write(buffer, buffer.position(), value);
+			buffer.position(buffer.position() + length);
+		}
+		
+		private void flush() throws IOException{
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+		
+		/*
+		 * Flushes the buffer and appends the checksum
+		 */
+		
+		private void finish() throws IOException{
+			flush();
+			buffer.putLong(crc.getValue());
+			buffer.flip();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+	}
+	
+	/*
+	 * Reads bytes from a channel through a buffer, adding every byte that
+	 * has been consumed to a checksum
+	 */
+	
+	private static class Reader{
+		private FileChannel channel;
+		private ByteBuffer buffer = ByteBuffer.allocate(BUFFER);
+		private CRC32 crc = new CRC32();
+		private int checked;
+		private long unread;
+		
+		private Reader(FileChannel channel) throws IOException{
+			this.channel = channel;
+			unread = channel.size();
+			buffer.flip();
+		}
+		
+		/*
+		 * Makes sure at least n unread bytes are in the buffer
+		 */
+		
+		private void ensure(int n) throws IOException{
+			if(buffer.remaining() >= n){
+				return;
+			}
+			check();
+			buffer.compact();
+			if(buffer.capacity() < n){
+				ByteBuffer larger = ByteBuffer.allocate(n);
+				buffer.flip();
+				larger.put(buffer);
+				buffer = larger;
+			}
+			while(buffer.position() < n){
+				int read = channel.read(buffer);
+				if(read < 0){
+					throw new IOException("Snapshot is truncated");
+				}
+				unread -= read;
+			}
+			buffer.flip();
+			checked = 0;
+		}
+		
+		/*
+		 * Adds the bytes consumed since the last call to the checksum
+		 */
+		
+		private void check(){
+			ByteBuffer consumed = buffer.duplicate();
+			consumed.position(checked);
+			consumed.limit(buffer.position());
+			crc.update(consumed);
+			checked = buffer.position();
+		}
+		
+		private int getInt() throws IOException{
+			ensure(4);
+			return buffer.getInt();
+		}
+		
+		private long getLong() throws IOException{
+			ensure(8);
+			return buffer.getLong();
+		}
+		
+		/*
+		 * Reads a length or count of things of the given size in bytes,
+		 * rejecting one that could not fit in the rest of the file
+		 */
+		
+		private int getLength(int size) throws IOException{
+			int n = getInt();
+			long bytes = (long) n * size;
+			if(n < 0 || bytes > unread + buffer.remaining() || bytes > Integer.MAX_VALUE - 8){
+				throw new IOException("Snapshot is corrupt");
+			}
+			return n;
+		}
+		
+		private String getKey() throws IOException{
+			int length = getLength(2);
+			ensure(2 * length);
+			char[] chars = new char[length];
+			for(int i = 0; i < length; i++){
+				chars[i] = buffer.getChar();
+			}
+			return new String(chars);
+		}
+		
+		private <E> E getValue(ValueCodec<E> codec) throws IOException{
+			int length = getLength(1);
+			ensure(length);
+			E value = codec.read(buffer, buffer.position(), length);
+			buffer.position(buffer.position() + length);
+			return value;
+		}
+		
+		/*
+		 * Reads the stored checksum and compares it with the one computed
+		 */
+		
+		private void verify() throws IOException{
+			check();
+			long expected = crc.getValue();
+			if(getLong() != expected){
+				throw new IOException("Snapshot checksum does not match");
+			}
+		}
+	}
+	
+	/*
+	 * Writes every pair in a table to a file
+	 */
+	
+	public static <E extends Comparable> void write(HashTable<E> table, String path, final ValueCodec<E> codec) throws IOException{
+		write(table.buckets(), path, codec);
+	}
+	
+	/*
+	 * Writes every pair in a tree to a file
+	 */
+	
+	public static <E extends Comparable<E>> void write(BinarySearchTree<E> tree, String path, ValueCodec<E> codec) throws IOException{
+		@SuppressWarnings("unchecked")
+		Bucket<E>[] buckets = (Bucket<E>[]) new Bucket<?>[]{tree};
+		write(buckets, path, codec);
+	}
+	
+	/*
+	 * Loads a table written by write, with the same number of buckets. If
+	 * the table hashes keys the same way as the one that was saved, each
+	 * bucket is built directly from the file; otherwise the pairs of
+	 * a bucket are put into whichever buckets they now belong in. Either way
+	 * pairs are added to what a bucket already holds, never replace it, as
+	 * a bucket read later may already have been given pairs that were moved
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public static <E extends Comparable> HashTable<E> readTable(String path, ValueCodec<E> codec, HashFunction hashFunction) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try{
+			Reader in = new Reader(file.getChannel());
+			HashTable<E> table = new HashTable<E>(header(in), hashFunction);
+			for(int b = in.getInt(); b >= 0; b = in.getInt()){
+				int n = in.getLength(8);
+				String[] keys = new String[n];
+				E[] values = (E[]) new Comparable<?>[n];
+				boolean direct = true;
+				for(int i = 0; i < n; i++){
+					keys[i] = in.getKey();
+					values[i] = in.getValue(codec);
+					direct = direct && table.bucketIndex(keys[i]) == b;
+				}
+				if(direct){
+					table.insertBucket(b, keys, values, 0, n);
+				}
+				else{
+					table.putAll(keys, values);
+				}
+			}
+			in.verify();
+			return table;
+		}
+		finally{
+			file.close();
+		}
+	}
+	
+	/*
+	 * Loads a tree written by write, building it directly from the sorted
+	 * pairs in the file
+	 */
+	
+	@SuppressWarnings("unchecked")
+	public static <E extends Comparable<E>> BinarySearchTree<E> readTree(String path, ValueCodec<E> codec) throws IOException{
+		RandomAccessFile file = new RandomAccessFile(path, "r");
+		try{
+			Reader in = new Reader(file.getChannel());
+			header(in);
+			BinarySearchTree<E> tree = new BinarySearchTree<E>();
+			for(int b = in.getInt(); b >= 0; b = in.getInt()){
+				int n = in.getLength(8);
+				String[] keys = new String[n];
+				E[] values = (E[]) new Comparable<?>[n];
+				for(int i = 0; i < n; i++){
+					keys[i] = in.getKey();
+					values[i] = in.getValue(codec);
+				}
+				tree.insertAll(keys, values, 0, n);
+			}
+			in.verify();
+			return tree;
+		}
+		finally{
+			file.close();
+		}
+	}
+	
+	/*
+	 * Writes the buckets to a temporary file next to path, then moves it
+	 * over path and forces the directory. If anything fails before the move,
+	 * the temporary file is deleted and path is left as it was
+	 */
+	
+	private static <E> void write(Bucket<E>[] buckets, String path, final ValueCodec<E> codec) throws IOException{
+		File target = new File(path);
+		File temp = new File(path + ".tmp");
+		boolean moved = false;
+		try{
+			RandomAccessFile file = new RandomAccessFile(temp, "rw");
+			try{
+				file.setLength(0);
+				final Writer out = new Writer(file.getChannel());
+				out.putInt(MAGIC);
+				out.putInt(VERSION);
+				out.putInt(buckets.length);
+				out.putLong(headerChecksum(buckets.length));
+				for(int b = 0; b < buckets.length; b++){
+					Bucket<E> t = buckets[b];
+					if(t == null || t.isEmpty()){
+						continue;
+					}
+					out.putInt(b);
+					out.putInt(t.size());
+					final IOException[] error = new IOException[1];
+					t.forEach((key, value) -> {
+						if(error[0] == null){
+							try{
+								out.putPair(key, value, codec);
+							}
+							catch(IOException e){
+								error[0] = e;
+							}
+						}
+					});
+					if(error[0] != null){
+						throw error[0];
+					}
+				}
+				out.putInt(-1);
+				out.finish();
+			}
+			finally{
+				file.close();
+			}
+			Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			moved = true;
+		}
+		finally{
+			if(!moved){
+				temp.delete();
+			}
+		}
+		syncDirectory(target);
+	}
+	
+	/*
+	 * Forces the directory holding a file to disk, so a rename into it
+	 * survives a crash; until then only the file's contents are durable
+	 */
+	
+	private static void syncDirectory(File file) throws IOException{
+		FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(), StandardOpenOption.READ);
+		try{
+			directory.force(true);
+		}
+		finally{
+			directory.close();
+		}
+	}
+	
+	/*
+	 * Checks the magic number, version and header checksum and returns the
+	 * number of buckets
+	 */
+	
+	private static int header(Reader in) throws IOException{
+		if(in.getInt() != MAGIC){
+			throw new IOException("Not a snapshot");
+		}
+		if(in.getInt() != VERSION){
+			throw new IOException("Unsupported snapshot version");
+		}
+		int buckets = in.getInt();
+		if(in.getLong() != headerChecksum(buckets) || buckets < 1){
+			throw new IOException("Snapshot is corrupt");
+		}
+		return buckets;
+	}
+	
+	private static long headerChecksum(int buckets){
+		CRC32 crc = new CRC32();
+		crc.update(ByteBuffer.allocate(12).putInt(MAGIC).putInt(VERSION).putInt(buckets).array());
+		return crc.getValue();
+	}
+	
+}
@@ -0,0 +1,18 @@
+/**
+ * StringHash.java
+ */
+
+/*
+ * Uses String.hashCode, which the String caches after the first call, and
+ * xors its high half into the low half so that tables which mask off the low
+ * bits still see the effect of every character.
+ */
+
+public class StringHash implements HashFunction{
+	
+	public int hash(String s){
+		int h = s.hashCode();
+		return h ^ (h >>> 16);
+	}
+	
+}
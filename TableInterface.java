@@ -0,0 +1,26 @@
+/**
+ * TableInterface.java
+ */
+
+/*
+ * The operations shared by the hash table implementations, so that callers
+ * can swap one for another
+ */
+
+public interface TableInterface<E>{
+
+    public abstract void put(String key, E value);
+
+    public abstract E get(String key);
+
+    public abstract boolean hasKey(String key);
+
+    public abstract void remove(String key);
+
+    public abstract int size();
+
+    public abstract String[] keys();
+
+    public abstract int[] distribution();
+
+}
@@ -0,0 +1,364 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * TableMetrics.java
+ */
+
+/*
+ * Counts what a HashTable does, cheaply enough to leave on in production:
+ * the number of gets, puts, removes, hits and misses, the rotations done to
+ * keep the buckets balanced, and histograms of key comparisons per lookup,
+ * the height of the bucket tree each put lands in (a put into a SmallBucket,
+ * which has no tree to be unbalanced, is left out), and the latency of each
+ * kind of operation (a batch, such as HashTable.getAll, counts every key but
+ * is timed as one sample). A growing number of comparisons or bucket height with the same
+ * number of pairs points at a hash function that has stopped spreading keys
+ * well, long before it shows up as latency.
+ *
+ * Every counter, and every bucket of every histogram, is a LongAdder, which
+ * keeps a separate cell for each contending thread, so recording from many
+ * threads never fights over one cache line. Reading the metrics adds the
+ * cells up: snapshot() returns a consistent-enough copy of everything, and
+ * register() publishes the metrics as an MXBean.
+ *
+ * Attach the metrics to a table with HashTable.setMetrics.
+ */
+
+public class TableMetrics implements TableMetricsMXBean{
+
+	private static final int BUCKETS = 64;
+
+	/*
+	 * Counts values in 64 buckets: a linear histogram has a bucket for each
+	 * value from 0 to 62 and one for everything larger, and a logarithmic one
+	 * has a bucket for each power of two
+	 */
+
+	private static class Histogram{
+		private LongAdder[] counts = new LongAdder[BUCKETS];
+		private LongAdder sum = new LongAdder();
+		private boolean log;
+
+		private Histogram(boolean log){
+			this.log = log;
+			for(int i = 0; i < BUCKETS; i++){
+				counts[i] = new LongAdder();
+			}
+		}
+
+		private void record(long value){
+			int i = log ? BUCKETS - Long.numberOfLeadingZeros(value) : (int) Math.min(value, BUCKETS - 1);
+			counts[Math.min(Math.max(i, 0), BUCKETS - 1)].increment();
+			sum.add(value);
+		}
+
+		private Distribution snapshot(){
+			long[] c = new long[BUCKETS];
+			for(int i = 0; i < BUCKETS; i++){
+				c[i] = counts[i].sum();
+			}
+			return new Distribution(c, sum.sum(), log);
+		}
+
+		private void reset(){
+			for(LongAdder a: counts){
+				a.reset();
+			}
+			sum.reset();
+		}
+	}
+
+	/*
+	 * A copy of a histogram taken at one point in time
+	 */
+
+	public static class Distribution{
+		private final long[] counts;
+		private final long sum;
+		private final long total;
+		private final boolean log;
+
+		private Distribution(long[] counts, long sum, boolean log){
+			this.counts = counts;
+			this.sum = sum;
+			this.log = log;
+			long t = 0;
+			for(long c: counts){
+				t += c;
+			}
+			total = t;
+		}
+
+		/*
+		 * Returns the number of values recorded
+		 */
+
+		public long count(){
+			return total;
+		}
+
+		public double mean(){
+			return total == 0 ? 0 : (double) sum / total;
+		}
+
+		/*
+		 * Returns the upper bound of the bucket holding the given fraction
+		 * (between 0 and 1) of the values, or 0 if nothing was recorded
+		 */
+
+		public long percentile(double p){
+			long rank = (long) Math.ceil(p * total);
+			long seen = 0;
+			for(int i = 0; i < BUCKETS; i++){
+				seen += counts[i];
+				if(seen >= rank && seen > 0){
+					return upper(i);
+				}
+			}
+			return 0;
+		}
+
+		public long max(){
+			for(int i = BUCKETS - 1; i >= 0; i--){
+				if(counts[i] > 0){
+					return upper(i);
+				}
+			}
+			return 0;
+		}
+
+		/*
+		 * Returns the number of values in each bucket
+		 */
+
+		public long[] counts(){
+			return counts.clone();
+		}
+
+		private long upper(int i){
+			if(!log){
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : i;
+			}
+			return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+		}
+
+		public String toString(){
+			return "count=" + total + " mean=" + String.format("%.2f", mean()) + " p50=" + percentile(0.5) + " p99=" + percentile(0.99) + " max=" + max();
+		}
+	}
+
+	/*
+	 * A copy of all of the metrics taken at one point in time
+	 */
+
+	public static class Stats{
+		public final long gets;
+		public final long puts;
+		public final long removes;
+		public final long hits;
+		public final long misses;
+		public final long rotations;
+		public final Distribution comparisons;
+		public final Distribution bucketHeights;
+		public final Distribution getNanos;
+		public final Distribution putNanos;
+		public final Distribution removeNanos;
+
+		private Stats(TableMetrics m){
+			gets = m.gets.sum();
+			puts = m.puts.sum();
+			removes = m.removes.sum();
+			hits = m.hits.sum();
+			misses = m.misses.sum();
+			rotations = m.rotations.sum();
+			comparisons = m.comparisons.snapshot();
+			bucketHeights = m.bucketHeights.snapshot();
+			getNanos = m.getNanos.snapshot();
+			putNanos = m.putNanos.snapshot();
+			removeNanos = m.removeNanos.snapshot();
+		}
+
+		public String toString(){
+			return "gets=" + gets + " puts=" + puts + " removes=" + removes + " hits=" + hits + " misses=" + misses + " rotations=" + rotations
+					+ "\ncomparisons: " + comparisons
+					+ "\nbucket heights: " + bucketHeights
+					+ "\nget ns: " + getNanos
+					+ "\nput ns: " + putNanos
+					+ "\nremove ns: " + removeNanos;
+		}
+	}
+
+	private LongAdder gets = new LongAdder();
+	private LongAdder puts = new LongAdder();
+	private LongAdder removes = new LongAdder();
+	private LongAdder hits = new LongAdder();
+	private LongAdder misses = new LongAdder();
+	private LongAdder rotations = new LongAdder();
+	private Histogram comparisons = new Histogram(false);
+	private Histogram bucketHeights = new Histogram(false);
+	private Histogram getNanos = new Histogram(true);
+	private Histogram putNanos = new Histogram(true);
+	private Histogram removeNanos = new Histogram(true);
+
+	/*
+	 * Recording, called by HashTable and BinarySearchTree
+	 */
+
+	void recordComparisons(int n){
+		comparisons.record(n);
+	}
+
+	void recordGet(boolean hit, long nanos){
+		gets.increment();
+		if(hit){
+			hits.increment();
+		}
+		else{
+			misses.increment();
+		}
+		getNanos.record(nanos);
+	}
+
+	/*
+	 * A negative height means the put did not land in a tree
+	 */
+
+	void recordPut(long rotations, int height, long nanos){
+		puts.increment();
+		if(rotations != 0){
+			this.rotations.add(rotations);
+		}
+		if(height >= 0){
+			bucketHeights.record(height);
+		}
+		putNanos.record(nanos);
+	}
+
+	void recordRemove(long rotations, long nanos){
+		removes.increment();
+		if(rotations != 0){
+			this.rotations.add(rotations);
+		}
+		removeNanos.record(nanos);
+	}
+
+	/*
+	 * A batch of n keys counts as n operations but adds a single latency
+	 * sample, the time taken by the whole batch
+	 */
+
+	void recordGets(int n, int hits, long nanos){
+		gets.add(n);
+		this.hits.add(hits);
+		misses.add(n - hits);
+		getNanos.record(nanos);
+	}
+
+	void recordPuts(int n, long rotations, long nanos){
+		puts.add(n);
+		if(rotations != 0){
+			this.rotations.add(rotations);
+		}
+		putNanos.record(nanos);
+	}
+
+	void recordRemoves(int n, long rotations, long nanos){
+		removes.add(n);
+		if(rotations != 0){
+			this.rotations.add(rotations);
+		}
+		removeNanos.record(nanos);
+	}
+
+	/*
+	 * Returns a copy of all of the metrics
+	 */
+
+	public Stats snapshot(){
+		return new Stats(this);
+	}
+
+	/*
+	 * Publishes the metrics on the platform MBean server under the given
+	 * name, and returns the name they were registered under
+	 */
+
+	public ObjectName register(String name) throws JMException{
+		ObjectName objectName = new ObjectName("HashTable:type=TableMetrics,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	public void unregister(ObjectName objectName) throws JMException{
+		ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+	}
+
+	public long getGets(){
+		return gets.sum();
+	}
+
+	public long getPuts(){
+		return puts.sum();
+	}
+
+	public long getRemoves(){
+		return removes.sum();
+	}
+
+	public long getHits(){
+		return hits.sum();
+	}
+
+	public long getMisses(){
+		return misses.sum();
+	}
+
+	public long getRotations(){
+		return rotations.sum();
+	}
+
+	public double getMeanComparisons(){
+		return comparisons.snapshot().mean();
+	}
+
+	public long getP99Comparisons(){
+		return comparisons.snapshot().percentile(0.99);
+	}
+
+	public double getMeanBucketHeight(){
+		return bucketHeights.snapshot().mean();
+	}
+
+	public long getMaxBucketHeight(){
+		return bucketHeights.snapshot().max();
+	}
+
+	public long getGetP50Nanos(){
+		return getNanos.snapshot().percentile(0.5);
+	}
+
+	public long getGetP99Nanos(){
+		return getNanos.snapshot().percentile(0.99);
+	}
+
+	public long getPutP99Nanos(){
+		return putNanos.snapshot().percentile(0.99);
+	}
+
+	public long getRemoveP99Nanos(){
+		return removeNanos.snapshot().percentile(0.99);
+	}
+
+	public void reset(){
+		for(LongAdder a: new LongAdder[]{gets, puts, removes, hits, misses, rotations}){
+			a.reset();
+		}
+		for(Histogram h: new Histogram[]{comparisons, bucketHeights, getNanos, putNanos, removeNanos}){
+			h.reset();
+		}
+	}
+
+}
@@ -0,0 +1,55 @@
+/**
+ * TableMetricsMXBean.java
+ */
+
+/*
+ * The view of a TableMetrics published over JMX. Percentiles are the upper
+ * bound of the histogram bucket the percentile falls in
+ */
+
+public interface TableMetricsMXBean{
+
+    public abstract long getGets();
+
+    public abstract long getPuts();
+
+    public abstract long getRemoves();
+
+    public abstract long getHits();
+
+    public abstract long getMisses();
+
+    /**
+     * Returns the number of rotations done by puts and removes
+     */
+    public abstract long getRotations();
+
+    /**
+     * Returns the mean number of key comparisons per lookup
+     */
+    public abstract double getMeanComparisons();
+
+    public abstract long getP99Comparisons();
+
+    /**
+     * Returns the mean height of the bucket tree written to by a put, over
+     * the puts that landed in a tree
+     */
+    public abstract double getMeanBucketHeight();
+
+    public abstract long getMaxBucketHeight();
+
+    public abstract long getGetP50Nanos();
+
+    public abstract long getGetP99Nanos();
+
+    public abstract long getPutP99Nanos();
+
+    public abstract long getRemoveP99Nanos();
+
+    /**
+     * Sets every counter and histogram back to zero
+     */
+    public abstract void reset();
+
+}
@@ -0,0 +1,73 @@
+import java.nio.ByteBuffer;
+
+/**
+ * ValueCodec.java
+ */
+
+/*
+ * Converts table values to and from bytes, for the tables and files that keep
+ * their values outside the Java heap. Reads and writes use absolute offsets
+ * into the buffer and leave its position alone.
+ */
+
+public interface ValueCodec<E>{
+
+    /**
+     * Returns the number of bytes write will use for a value
+     */
+    public abstract int size(E value);
+
+    public abstract void write(ByteBuffer buffer, int offset, E value);
+
+    /**
+     * Decodes a value from the length bytes starting at offset
+     */
+    public abstract E read(ByteBuffer buffer, int offset, int length);
+
+    public static final ValueCodec<Integer> INTEGER = new ValueCodec<Integer>(){
+    	public int size(Integer value){
+    		return 4;
+    	}
+    	public void write(ByteBuffer buffer, int offset, Integer value){
+    		buffer.putInt(offset, value);
+    	}
+    	public Integer read(ByteBuffer buffer, int offset, int length){
+    		return buffer.getInt(offset);
+    	}
+    };
+
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>(){
+    	public int size(Long value){
+    		return 8;
+    	}
+    	public void write(ByteBuffer buffer, int offset, Long value){
+    		buffer.putLong(offset, value);
+    	}
+    	public Long read(ByteBuffer buffer, int offset, int length){
+    		return buffer.getLong(offset);
+    	}
+    };
+
+    /*
+     * Stores a String as its UTF-16 chars
+     */
+
+    public static final ValueCodec<String> STRING = new ValueCodec<String>(){
+    	public int size(String value){
+    		return value.length() * 2;
+    	}
+    	public void write(ByteBuffer buffer, int offset, String value){
+    		for(int i = 0; i < value.length(); i++){
+    			buffer.putChar(offset + i * 2, value.charAt(i));
+    		}
+    	}
+    	public String read(ByteBuffer buffer, int offset, int length){
+    		char[] c = new char[length / 2];
+    		for(int i = 0; i < c.length; i++){
+    			c[i] = buffer.getChar(offset + i * 2);
+    		}
+    		return new String(c);
+    	}
+    };
+
+}